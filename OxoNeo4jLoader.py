@@ -110,7 +110,7 @@ class Neo4jOxOLoader:
         loadMappingsCypher = "USING PERIODIC COMMIT 10000 LOAD CSV WITH HEADERS FROM 'file:///"+mappings+"""' AS line
                         MATCH (f:Term { curie: line.fromCurie}),(t:Term { curie: line.toCurie})
                         WITH f,t,line
-                        CREATE (f)-[m:MAPPING { sourcePrefix: line.datasourcePrefix, datasource: line.datasource, sourceType: line.sourceType, scope: line.scope, date: line.date}]->(t)"""
+                        CREATE (f)-[m:MAPPING { sourcePrefix: line.datasourcePrefix, datasource: line.datasource, sourceType: line.sourceType, scope: line.scope, date: line.date, count: toInteger(line.count), sources: split(line.sources, ';')}]->(t)"""
         print("loadMappingsCypher = " + loadMappingsCypher)
         result = self.session.run(loadMappingsCypher)
         print(result.summary())
@@ -0,0 +1,75 @@
+package uk.ac.ebi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A whole conversion of a directory of SSSOM files to the terms and mappings CSV files, as run from the command line.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+	static final int FILES = 8;
+	static final int ROWS_PER_FILE = 50_000;
+
+	@Param({ "1", "4" })
+	int threads;
+
+	@Param({ "csv", "csv.gz" })
+	String extension;
+
+	private Path directory;
+	private List<File> sssomFiles;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("end-to-end");
+		sssomFiles = new ArrayList<>();
+		for (int f = 0; f < FILES; f++) {
+			Path sssomFile = directory.resolve("source" + f + ".sssom.tsv");
+			new SyntheticSSSOM().setRows(ROWS_PER_FILE).setSeed(f).write(sssomFile);
+			sssomFiles.add(sssomFile.toFile());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (var paths = Files.list(directory)) {
+			for (Path path : (Iterable<Path>)paths::iterator)
+				Files.delete(path);
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public void convert() throws IOException {
+		Oxo1SSSOM2Neo.generateNeo4JNodesAndEdgesCSV(sssomFiles,
+				directory.resolve("terms." + extension),
+				directory.resolve("mappings." + extension),
+				new HashMap<>(),
+				new ConversionOptions().setThreads(threads));
+	}
+}
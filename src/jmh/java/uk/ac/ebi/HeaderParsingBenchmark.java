@@ -0,0 +1,55 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Time to open an SSSOM file and parse its YAML header, paid once per file, with small and large curie_maps.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderParsingBenchmark {
+
+	@Param({ "10", "1000" })
+	int prefixes;
+
+	private Path directory;
+	private Path sssomFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("header-parsing");
+		sssomFile = directory.resolve("bench.sssom.tsv");
+		new SyntheticSSSOM().setRows(1000).setPrefixes(prefixes).write(sssomFile);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(sssomFile);
+		Files.deleteIfExists(directory);
+	}
+
+	@Benchmark
+	public Map<String, Object> getYamlHeader() throws IOException {
+		return Oxo1SSSOM2Neo.getYamlHeader(sssomFile.toFile());
+	}
+}
@@ -0,0 +1,67 @@
+package uk.ac.ebi;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Node ids per second through the NodeIdStore: adding the candidate nodes of a run, where most ids come back several
+// times, and the contains() checks the reader threads make against a filled store.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(NodeDedupBenchmark.IDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeDedupBenchmark {
+
+	static final int IDS = 1_000_000;
+
+	@Param({ "false", "true" })
+	boolean offHeap;
+
+	private String[] nodeIds;
+	private NodeIdStore filled;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		SplittableRandom random = new SplittableRandom(42);
+		nodeIds = new String[IDS];
+		for (int i = 0; i < IDS; i++) {
+			// a third of the ids have local parts that are not numbers
+			int local = random.nextInt(IDS / 3);
+			nodeIds[i] = "P" + random.nextInt(50) + ":" + (i % 3 == 0 ? "X_" + local : String.format("%07d", local));
+		}
+		filled = add();
+	}
+
+	@Benchmark
+	public NodeIdStore add() {
+		NodeIdStore store = new NodeIdStore(offHeap, Long.MAX_VALUE);
+		for (String nodeId : nodeIds)
+			store.add(nodeId, false);
+		return store;
+	}
+
+	@Benchmark
+	public int contains() {
+		int found = 0;
+		for (String nodeId : nodeIds)
+			if (filled.contains(nodeId))
+				found++;
+		return found;
+	}
+}
@@ -0,0 +1,106 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Rows per second through the two halves of the conversion: reading an SSSOM file into batches, and merging the
+// batches into the outputs (writeMappings, addNode and the prefix resolution, and the writer stages printing the rows),
+// written to a null writer.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(RowThroughputBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowThroughputBenchmark {
+
+	static final int ROWS = 100_000;
+
+	@Param({ "10", "1000" })
+	int prefixes;
+
+	@Param({ "0.0", "0.5" })
+	double labelSparsity;
+
+	@Param({ "6", "20" })
+	int columns;
+
+	private Path directory;
+	private Path sssomFile;
+	private List<MappingBatch> batches;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("row-throughput");
+		sssomFile = directory.resolve("bench.sssom.tsv");
+		new SyntheticSSSOM().setRows(ROWS).setPrefixes(prefixes).setLabelSparsity(labelSparsity).setColumns(columns)
+				.write(sssomFile);
+
+		batches = new ArrayList<>();
+		SSSOMFileTask task = new SSSOMFileTask(sssomFile.toFile(), SSSOMProjection.forOutputs(),
+				DatasourceRegistry.empty(), "2024-01-01", nodeId -> false);
+		Thread reader = new Thread(task);
+		reader.start();
+		MappingBatch batch;
+		do {
+			batch = task.take();
+			batches.add(batch);
+		} while (!batch.last);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(sssomFile);
+		Files.deleteIfExists(directory);
+	}
+
+	@Benchmark
+	public void readRows(Blackhole blackhole) throws IOException {
+		try (SSSOMReader reader = new SSSOMReader(sssomFile.toFile(), SSSOMProjection.forOutputs())) {
+			int subjectId = reader.getColumnIndex("subject_id");
+			int subjectLabel = reader.getColumnIndex("subject_label");
+			int objectId = reader.getColumnIndex("object_id");
+			int objectLabel = reader.getColumnIndex("object_label");
+			while (reader.next()) {
+				blackhole.consume(reader.get(subjectId));
+				blackhole.consume(reader.get(subjectLabel));
+				blackhole.consume(reader.get(objectId));
+				blackhole.consume(reader.get(objectLabel));
+			}
+		}
+	}
+
+	@Benchmark
+	public long writeMappings() throws IOException {
+		NodeIdStore nodeIds = new NodeIdStore(false, Long.MAX_VALUE);
+		PrefixResolver prefixResolver = new PrefixResolver();
+		try (GraphOutput output = new CsvGraphOutput(Writer.nullWriter(), Writer.nullWriter())) {
+			for (MappingBatch batch : batches)
+				Oxo1SSSOM2Neo.writeMappings(batch, output, nodeIds, prefixResolver);
+			nodeIds.forEachPending(nodeId -> output.writeTerm(nodeId, nodeId, prefixResolver));
+		}
+		return nodeIds.size();
+	}
+}
@@ -0,0 +1,118 @@
+package uk.ac.ebi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+// Writes SSSOM files of made up mappings for the benchmarks. Subjects and objects are drawn from a fixed pool of ids
+// per prefix, so the same nodes come back in many rows as they do in real mapping sets, and a share of the labels is
+// left empty. The columns past the six the conversion reads are filled with values it has to skip.
+//
+//     java -cp target/benchmarks.jar uk.ac.ebi.SyntheticSSSOM <file> [rows] [prefixes] [label sparsity] [columns]
+public class SyntheticSSSOM {
+
+	static final int CORE_COLUMNS = 6;
+	private static final String[] EXTRA_COLUMNS = { "confidence", "author_id", "mapping_tool", "subject_source",
+			"object_source", "comment" };
+
+	private int rows = 100_000;
+	private int prefixes = 10;
+	private double labelSparsity = 0.2;
+	private int columns = 9;
+	private long seed = 42;
+
+	public SyntheticSSSOM setRows(int rows) {
+		this.rows = rows;
+		return this;
+	}
+
+	public SyntheticSSSOM setPrefixes(int prefixes) {
+		this.prefixes = prefixes;
+		return this;
+	}
+
+	// Share of the subject and object labels left empty, between 0 and 1.
+	public SyntheticSSSOM setLabelSparsity(double labelSparsity) {
+		this.labelSparsity = labelSparsity;
+		return this;
+	}
+
+	// Number of columns, at least the six the conversion reads.
+	public SyntheticSSSOM setColumns(int columns) {
+		if (columns < CORE_COLUMNS)
+			throw new IllegalArgumentException("at least " + CORE_COLUMNS + " columns, got " + columns);
+		this.columns = columns;
+		return this;
+	}
+
+	public SyntheticSSSOM setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public void write(Path path) throws IOException {
+		SplittableRandom random = new SplittableRandom(seed);
+		int idsPerPrefix = Math.max(1, rows / prefixes);
+
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			out.write("# curie_map:\n");
+			for (int p = 0; p < prefixes; p++)
+				out.write("#   " + prefix(p) + ": http://example.org/" + prefix(p).toLowerCase() + "/\n");
+			out.write("# license: https://creativecommons.org/publicdomain/zero/1.0/\n");
+			out.write("# local_name: " + path.getFileName().toString().replaceAll("\\..*", "") + ".sssom.tsv\n");
+			out.write("# mapping_set_id: http://example.org/" + path.getFileName() + "\n");
+
+			StringBuilder line = new StringBuilder("subject_id\tsubject_label\tpredicate_id\tobject_id\tobject_label"
+					+ "\tmapping_justification");
+			for (int c = CORE_COLUMNS; c < columns; c++)
+				line.append('\t').append(c - CORE_COLUMNS < EXTRA_COLUMNS.length
+						? EXTRA_COLUMNS[c - CORE_COLUMNS] : "extra_" + c);
+			out.write(line.append('\n').toString());
+
+			for (int row = 0; row < rows; row++) {
+				line.setLength(0);
+				String subject = prefix(random.nextInt(prefixes)) + ":" + String.format("%07d", random.nextInt(idsPerPrefix));
+				String object = prefix(random.nextInt(prefixes)) + ":" + String.format("%07d", random.nextInt(idsPerPrefix));
+				line.append(subject).append('\t');
+				if (random.nextDouble() >= labelSparsity)
+					line.append("label of ").append(subject);
+				line.append("\tskos:exactMatch\t").append(object).append('\t');
+				if (random.nextDouble() >= labelSparsity)
+					line.append("label of ").append(object);
+				line.append("\tsemapv:LexicalMatching");
+				for (int c = CORE_COLUMNS; c < columns; c++) {
+					line.append('\t');
+					if (c == CORE_COLUMNS)
+						line.append(random.nextInt(1000) / 1000.0);
+					else
+						line.append("value ").append(random.nextInt(100));
+				}
+				out.write(line.append('\n').toString());
+			}
+		}
+	}
+
+	private static String prefix(int p) {
+		return "P" + p;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("usage: SyntheticSSSOM <file> [rows] [prefixes] [label sparsity] [columns]");
+			System.exit(1);
+		}
+		SyntheticSSSOM generator = new SyntheticSSSOM();
+		if (args.length > 1)
+			generator.setRows(Integer.parseInt(args[1]));
+		if (args.length > 2)
+			generator.setPrefixes(Integer.parseInt(args[2]));
+		if (args.length > 3)
+			generator.setLabelSparsity(Double.parseDouble(args[3]));
+		if (args.length > 4)
+			generator.setColumns(Integer.parseInt(args[4]));
+		generator.write(Path.of(args[0]));
+	}
+}
@@ -0,0 +1,400 @@
+package uk.ac.ebi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Collapses the mappings asserted by several rows, of one or more SSSOM files, into one mapping per (fromCurie,
+// toCurie, datasourcePrefix), with how many rows asserted it and the mapping sets they came from. The other columns of
+// a mapping only depend on its datasource prefix and the date, so nothing else is lost. Terms go straight through.
+//
+// The mappings are kept in an open-addressing table on a 64-bit hash of their key, the keys themselves are only
+// compared when the hashes are equal. When the table outgrows its memory budget, it is spilled to partition files by
+// the top bits of the hash, which are aggregated one at a time when the output is closed. A partition whose mappings
+// do not fit the budget either, because the hashes are skewed or there are many distinct mappings, is split again on
+// the next bits of the hash, and so on. The mappings are written in the order they were first seen, within each
+// partition if the table was spilled.
+class AggregatingGraphOutput implements GraphOutput {
+
+	private static final int PARTITION_BITS = 6;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// rough heap cost of a mapping besides the characters of its CURIEs
+	private static final int MAPPING_OVERHEAD = 160;
+
+	private final GraphOutput output;
+	private final Path tempDir;
+	private final long memoryBudget;
+
+	private final List<EdgeRowPlan> rowPlans = new ArrayList<>();
+	private final Map<EdgeRowPlan, Integer> rowPlanIds = new IdentityHashMap<>();
+	private final List<String> sources = new ArrayList<>();
+	private final Map<String, Integer> sourceIds = new HashMap<>();
+
+	private Table table = new Table();
+	private long tableBytes;
+	private long sequence;
+	private long rows;
+	private long mappings;
+
+	private Path spillDir;
+	private DataOutputStream[] partitions;
+	private int spills;
+	private int splits;
+
+	AggregatingGraphOutput(GraphOutput output, Path tempDir, long memoryBudget) {
+		this.output = output;
+		this.tempDir = tempDir;
+		this.memoryBudget = memoryBudget;
+	}
+
+	@Override
+	public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException {
+		output.writeTerm(nodeId, nodeLabel, prefixes);
+	}
+
+	@Override
+	public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException {
+		add(rowPlan, fromId, toId, 1, new int[] { sourceId(rowPlan.getSource()) });
+	}
+
+	@Override
+	public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		add(rowPlan, fromId, toId, count, Arrays.stream(sources.split(";")).mapToInt(this::sourceId).sorted().toArray());
+	}
+
+	private void add(EdgeRowPlan rowPlan, String fromId, String toId, long count, int[] sourceIds) throws IOException {
+		Integer rowPlanId = rowPlanIds.get(rowPlan);
+		if (rowPlanId == null) {
+			rowPlanId = rowPlans.size();
+			rowPlans.add(rowPlan);
+			rowPlanIds.put(rowPlan, rowPlanId);
+		}
+		rows += count;
+
+		Mapping mapping = new Mapping(hash(fromId, toId, rowPlan.getDatasourcePrefix()), fromId, toId, rowPlanId,
+				count, sequence++, sourceIds);
+		if (table.add(mapping, rowPlans)) {
+			tableBytes += MAPPING_OVERHEAD + 2L * (fromId.length() + toId.length());
+			if (tableBytes >= memoryBudget)
+				spill();
+		}
+	}
+
+	int getSpills() {
+		return spills;
+	}
+
+	int getSplits() {
+		return splits;
+	}
+
+	private int sourceId(String source) {
+		return sourceIds.computeIfAbsent(source, name -> {
+			sources.add(name);
+			return sources.size() - 1;
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (partitions == null) {
+				write(table);
+			} else {
+				spill();
+				for (DataOutputStream partition : partitions)
+					partition.close();
+				for (int partition = 0; partition < partitions.length; partition++)
+					aggregate(partitionPath(Integer.toString(partition)), 1);
+			}
+			System.out.println("aggregated " + rows + " mapping rows into " + mappings + " mappings"
+					+ (spills > 0 ? ", spilled " + spills + " times" : "")
+					+ (splits > 0 ? ", split " + splits + " partitions" : ""));
+		} finally {
+			try {
+				deleteSpillDir();
+			} finally {
+				output.close();
+			}
+		}
+	}
+
+	private void write(Table table) throws IOException {
+		List<Mapping> sorted = table.mappings();
+		sorted.sort(Comparator.comparingLong(mapping -> mapping.firstSeen));
+		StringBuilder sourceNames = new StringBuilder();
+		for (Mapping mapping : sorted) {
+			sourceNames.setLength(0);
+			for (int source : mapping.sources) {
+				if (sourceNames.length() > 0)
+					sourceNames.append(';');
+				sourceNames.append(sources.get(source));
+			}
+			output.writeAggregatedMapping(rowPlans.get(mapping.rowPlan), mapping.fromId, mapping.toId, mapping.count,
+					sourceNames.toString());
+			mappings++;
+		}
+	}
+
+	private void spill() throws IOException {
+		if (partitions == null) {
+			Files.createDirectories(tempDir);
+			spillDir = Files.createTempDirectory(tempDir, "oxo-mappings-");
+			partitions = new DataOutputStream[1 << PARTITION_BITS];
+			for (int partition = 0; partition < partitions.length; partition++)
+				partitions[partition] = partitionWriter(partitionPath(Integer.toString(partition)));
+		}
+		for (Mapping mapping : table.mappings())
+			writeMapping(partitions[partitionOf(mapping, 1)], mapping);
+		table = new Table();
+		tableBytes = 0;
+		spills++;
+	}
+
+	// Aggregates and writes the mappings of a partition of the given level, where level 1 is partitioned on the top
+	// PARTITION_BITS bits of the hash. If its distinct mappings go over the memory budget, it is split instead.
+	private void aggregate(Path partition, int level) throws IOException {
+		Table partitionTable = new Table();
+		long partitionBytes = 0;
+		boolean fits = true;
+		try (DataInputStream in = partitionReader(partition)) {
+			for (Mapping mapping = readMapping(in); mapping != null; mapping = readMapping(in)) {
+				if (partitionTable.add(mapping, rowPlans)) {
+					partitionBytes += MAPPING_OVERHEAD + 2L * (mapping.fromId.length() + mapping.toId.length());
+					if (partitionBytes >= memoryBudget && partitionTable.size > 1
+							&& (level + 1) * PARTITION_BITS <= Long.SIZE) {
+						fits = false;
+						break;
+					}
+				}
+			}
+		}
+		if (fits) {
+			write(partitionTable);
+		} else {
+			partitionTable = null;
+			split(partition, level);
+		}
+		Files.delete(partition);
+	}
+
+	// Splits a partition on the next PARTITION_BITS bits of the hash, and aggregates the parts one at a time.
+	private void split(Path partition, int level) throws IOException {
+		String name = partition.getFileName().toString();
+		String id = name.substring("partition-".length(), name.length() - ".bin".length());
+		Path[] parts = new Path[1 << PARTITION_BITS];
+		DataOutputStream[] outs = new DataOutputStream[parts.length];
+		try (DataInputStream in = partitionReader(partition)) {
+			for (int part = 0; part < parts.length; part++) {
+				parts[part] = partitionPath(id + "-" + part);
+				outs[part] = partitionWriter(parts[part]);
+			}
+			for (Mapping mapping = readMapping(in); mapping != null; mapping = readMapping(in))
+				writeMapping(outs[partitionOf(mapping, level + 1)], mapping);
+		} finally {
+			for (DataOutputStream out : outs)
+				if (out != null)
+					out.close();
+		}
+		splits++;
+		for (Path part : parts)
+			aggregate(part, level + 1);
+	}
+
+	private static int partitionOf(Mapping mapping, int level) {
+		return (int)(mapping.hash >>> (Long.SIZE - level * PARTITION_BITS)) & ((1 << PARTITION_BITS) - 1);
+	}
+
+	private Path partitionPath(String id) {
+		return spillDir.resolve("partition-" + id + ".bin");
+	}
+
+	private static DataOutputStream partitionWriter(Path partition) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partition), BUFFER_SIZE));
+	}
+
+	private static DataInputStream partitionReader(Path partition) throws IOException {
+		return new DataInputStream(new BufferedInputStream(Files.newInputStream(partition), BUFFER_SIZE));
+	}
+
+	private static void writeMapping(DataOutputStream out, Mapping mapping) throws IOException {
+		out.writeLong(mapping.hash);
+		writeString(out, mapping.fromId);
+		writeString(out, mapping.toId);
+		out.writeInt(mapping.rowPlan);
+		out.writeLong(mapping.count);
+		out.writeLong(mapping.firstSeen);
+		out.writeInt(mapping.sources.length);
+		for (int source : mapping.sources)
+			out.writeInt(source);
+	}
+
+	// The next mapping of a partition, or null at its end.
+	private static Mapping readMapping(DataInputStream in) throws IOException {
+		long hash;
+		try {
+			hash = in.readLong();
+		} catch (EOFException e) {
+			return null;
+		}
+		String fromId = readString(in);
+		String toId = readString(in);
+		int rowPlan = in.readInt();
+		long count = in.readLong();
+		long firstSeen = in.readLong();
+		int[] sourceIds = new int[in.readInt()];
+		for (int i = 0; i < sourceIds.length; i++)
+			sourceIds[i] = in.readInt();
+		return new Mapping(hash, fromId, toId, rowPlan, count, firstSeen, sourceIds);
+	}
+
+	private void deleteSpillDir() throws IOException {
+		if (spillDir == null)
+			return;
+		for (DataOutputStream partition : partitions)
+			partition.close();
+		try (Stream<Path> files = Files.list(spillDir)) {
+			for (Path file : (Iterable<Path>)files::iterator)
+				Files.deleteIfExists(file);
+		}
+		Files.deleteIfExists(spillDir);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// FNV-1a over the three parts of the key, with a final mix so that both ends of the hash are usable.
+	static long hash(String fromId, String toId, String datasourcePrefix) {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, fromId);
+		hash = hash(hash, toId);
+		hash = hash(hash, datasourcePrefix);
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static long hash(long hash, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		// separates the parts, so ("ab", "c") and ("a", "bc") differ
+		hash ^= 0xff;
+		hash *= 0x100000001b3L;
+		return hash;
+	}
+
+	private static final class Mapping {
+		final long hash;
+		final String fromId;
+		final String toId;
+		final int rowPlan;
+		long count;
+		long firstSeen;
+		int[] sources; // sorted ids
+
+		Mapping(long hash, String fromId, String toId, int rowPlan, long count, long firstSeen, int[] sources) {
+			this.hash = hash;
+			this.fromId = fromId;
+			this.toId = toId;
+			this.rowPlan = rowPlan;
+			this.count = count;
+			this.firstSeen = firstSeen;
+			this.sources = sources;
+		}
+
+		void absorb(Mapping other) {
+			count += other.count;
+			firstSeen = Math.min(firstSeen, other.firstSeen);
+			for (int source : other.sources) {
+				int index = Arrays.binarySearch(sources, source);
+				if (index < 0) {
+					int insert = -index - 1;
+					int[] grown = new int[sources.length + 1];
+					System.arraycopy(sources, 0, grown, 0, insert);
+					grown[insert] = source;
+					System.arraycopy(sources, insert, grown, insert + 1, sources.length - insert);
+					sources = grown;
+				}
+			}
+		}
+	}
+
+	private static final class Table {
+		private long[] hashes = new long[1024];
+		private Mapping[] mappings = new Mapping[1024];
+		private int size;
+
+		// Returns true if the mapping is new, false if it was merged into one already in the table.
+		boolean add(Mapping mapping, List<EdgeRowPlan> rowPlans) {
+			int mask = mappings.length - 1;
+			int slot = (int)mapping.hash & mask;
+			Mapping existing;
+			while ((existing = mappings[slot]) != null) {
+				if (hashes[slot] == mapping.hash && existing.fromId.equals(mapping.fromId)
+						&& existing.toId.equals(mapping.toId)
+						&& rowPlans.get(existing.rowPlan).getDatasourcePrefix()
+								.equals(rowPlans.get(mapping.rowPlan).getDatasourcePrefix())) {
+					existing.absorb(mapping);
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+			hashes[slot] = mapping.hash;
+			mappings[slot] = mapping;
+			if (++size * 3 > mappings.length * 2)
+				resize();
+			return true;
+		}
+
+		List<Mapping> mappings() {
+			List<Mapping> list = new ArrayList<>(size);
+			for (Mapping mapping : mappings)
+				if (mapping != null)
+					list.add(mapping);
+			return list;
+		}
+
+		private void resize() {
+			Mapping[] old = mappings;
+			hashes = new long[old.length * 2];
+			mappings = new Mapping[old.length * 2];
+			int mask = mappings.length - 1;
+			for (Mapping mapping : old) {
+				if (mapping == null)
+					continue;
+				int slot = (int)mapping.hash & mask;
+				while (mappings[slot] != null)
+					slot = (slot + 1) & mask;
+				hashes[slot] = mapping.hash;
+				mappings[slot] = mapping;
+			}
+		}
+	}
+}
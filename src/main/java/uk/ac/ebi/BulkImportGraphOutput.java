@@ -0,0 +1,152 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVPrinter;
+
+// Files for an offline `neo4j-admin import`, building the same graph as OxoNeo4jLoader.py does from the CSV outputs:
+// Datasource and Term nodes, HAS_SOURCE from every term to the datasource of its prefix, and MAPPING between terms.
+// Terms are identified by their NodeIdStore ordinal and datasources by their position in prefix order, in the
+// separate Term and Datasource id spaces, so the import runs with --id-type=INTEGER.
+//
+// Like the loader, which only creates a term once it has matched the datasource of the term's prefix, terms whose
+// prefix is not one of a datasource's, in any case, are left out, together with the mappings from or to them.
+class BulkImportGraphOutput implements GraphOutput {
+
+	static final String DATASOURCES_FILE = "datasource.csv";
+	static final String TERMS_FILE = "term.csv";
+	static final String HAS_SOURCE_FILE = "has_source.csv";
+	static final String MAPPINGS_FILE = "mapping.csv";
+
+	private static final String[] DATASOURCE_HEADER = { ":ID(Datasource)", "prefix:string", "preferredPrefix:string",
+			"name:string", "description:string", "versionInfo:string", "idorgNamespace:string", "sourceType:string",
+			"alternatePrefix:string[]" };
+	private static final String[] TERM_HEADER = { ":ID(Term)", "curie:string", "id:string", "label:string",
+			"uri:string" };
+	private static final String[] HAS_SOURCE_HEADER = { ":START_ID(Term)", ":END_ID(Datasource)" };
+	// in the order of the MappingHeader columns, so the EdgeRowPlan of the CSV output prints these rows too
+	private static final String[] MAPPING_HEADER = { ":START_ID(Term)", ":END_ID(Term)", "sourcePrefix:string",
+			"datasource:string", "sourceType:string", "scope:string", "date:string" };
+	private static final String[] AGGREGATE_HEADER = { "count:long", "sources:string[]" };
+
+	private final Path outputDir;
+	private final DatasourceRegistry datasources;
+	private final NodeIdStore nodeIds;
+	private final Map<String, Integer> datasourceIds = new HashMap<>();
+
+	private final CSVPrinter termsPrinter;
+	private final CSVPrinter hasSourcePrinter;
+	private final CSVPrinter mappingsPrinter;
+
+	private long terms;
+	private long skippedTerms;
+	private long mappings;
+	private long skippedMappings;
+
+	BulkImportGraphOutput(Path outputDir, DatasourceRegistry datasources, NodeIdStore nodeIds,
+						  int compressionThreads, Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, boolean aggregatedMappings)
+			throws IOException {
+		this.outputDir = outputDir;
+		this.datasources = datasources;
+		this.nodeIds = nodeIds;
+		Files.createDirectories(outputDir);
+
+		try (CSVPrinter datasourcesPrinter = printer(DATASOURCES_FILE, DATASOURCE_HEADER, 1)) {
+			for (Datasources.Datasource datasource : datasources.getDatasources()) {
+				datasourceIds.put(datasource.getPrefix(), datasourceIds.size());
+				datasourcesPrinter.printRecord(datasourceIds.get(datasource.getPrefix()), datasource.getPrefix(),
+						datasource.getPrefix(), datasource.getTitle(), datasource.getDescription(),
+						datasource.getVersionInfo(), datasource.getIdorgNamespace(), datasource.getSourceType(),
+						String.join(";", datasource.alternativePrefixes));
+			}
+		}
+
+		termsPrinter = printer(TERMS_FILE, TERM_HEADER, compressionThreads);
+		hasSourcePrinter = printer(HAS_SOURCE_FILE, HAS_SOURCE_HEADER, compressionThreads);
+		List<String> mappingHeader = new ArrayList<>();
+		for (Oxo1SSSOM2Neo.MappingHeader column : mappingColumns)
+			mappingHeader.add(MAPPING_HEADER[column.ordinal()]);
+		if (aggregatedMappings)
+			mappingHeader.addAll(List.of(AGGREGATE_HEADER));
+		mappingsPrinter = printer(MAPPINGS_FILE, mappingHeader.toArray(new String[0]), compressionThreads);
+	}
+
+	@Override
+	public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException {
+		List<String> row = Oxo1SSSOM2Neo.termRow(nodeId, nodeLabel, prefixes);
+		Integer datasourceId = datasourceIds.get(row.get(Oxo1SSSOM2Neo.TermHeader.PREFIX.ordinal()));
+		if (datasourceId == null) {
+			skippedTerms++;
+			return;
+		}
+
+		long termId = nodeIds.ordinal(nodeId);
+		termsPrinter.printRecord(termId,
+				row.get(Oxo1SSSOM2Neo.TermHeader.CURIE.ordinal()),
+				row.get(Oxo1SSSOM2Neo.TermHeader.IDENTIFIER.ordinal()),
+				row.get(Oxo1SSSOM2Neo.TermHeader.LABEL.ordinal()),
+				row.get(Oxo1SSSOM2Neo.TermHeader.URI.ordinal()));
+		hasSourcePrinter.printRecord(termId, datasourceId);
+		terms++;
+	}
+
+	@Override
+	public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException {
+		if (!hasDatasource(fromId) || !hasDatasource(toId)) {
+			skippedMappings++;
+			return;
+		}
+		rowPlan.print(mappingsPrinter, Long.toString(nodeIds.ordinal(fromId)), Long.toString(nodeIds.ordinal(toId)));
+		mappings++;
+	}
+
+	@Override
+	public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		if (!hasDatasource(fromId) || !hasDatasource(toId)) {
+			skippedMappings++;
+			return;
+		}
+		rowPlan.print(mappingsPrinter, Long.toString(nodeIds.ordinal(fromId)), Long.toString(nodeIds.ordinal(toId)),
+				Long.toString(count), sources);
+		mappings++;
+	}
+
+	private boolean hasDatasource(String nodeId) {
+		return datasources.find(nodeId, nodeId.indexOf(':')) != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			termsPrinter.close(true);
+			hasSourcePrinter.close(true);
+		} finally {
+			mappingsPrinter.close(true);
+		}
+
+		System.out.println("bulk import: " + datasourceIds.size() + " datasources, " + terms + " terms and "
+				+ mappings + " mappings; left out " + skippedTerms + " terms and " + skippedMappings
+				+ " mappings without a datasource");
+		// the neo4j-admin of the Neo4j 3.x that OxO runs
+		System.out.println("import with: neo4j-admin import --mode=csv --database=graph.db --id-type=INTEGER"
+				+ " --multiline-fields=true"
+				+ " --nodes:Datasource=" + outputDir.resolve(DATASOURCES_FILE)
+				+ " --nodes:Term=" + outputDir.resolve(TERMS_FILE)
+				+ " --relationships:HAS_SOURCE=" + outputDir.resolve(HAS_SOURCE_FILE)
+				+ " --relationships:MAPPING=" + outputDir.resolve(MAPPINGS_FILE));
+	}
+
+	private CSVPrinter printer(String name, String[] header, int compressionThreads) throws IOException {
+		return Oxo1SSSOM2Neo.CSV_FORMAT.withHeader(header).print(new OutputStreamWriter(
+				CompressedFiles.openOutput(outputDir.resolve(name), compressionThreads), StandardCharsets.UTF_8));
+	}
+}
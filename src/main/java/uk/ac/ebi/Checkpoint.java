@@ -0,0 +1,240 @@
+package uk.ac.ebi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+// Checkpoints of a conversion, so a run that crashed or was stopped can go on after the last SSSOM file it finished
+// instead of starting over. Once the checkpoint interval has passed, the next finished file is followed by a
+// checkpoint: the terms and mappings files are flushed and synced to disk, gzip outputs up to the end of a member,
+// and checkpoint.json records the files done so far with their size and modification time, the length of each
+// output, the merged curie_map, the date of the run and a hash of the datasources. The NodeIdStore, including the
+// nodes still waiting for a label, goes to a file of its own next to it.
+//
+// Resuming truncates the outputs to the lengths of the checkpoint, restores the node store and the curie_map, and
+// appends the rows of the remaining files, so the outputs are the same as those of a run that was not interrupted.
+// The checkpoint is deleted once the conversion is done.
+class Checkpoint {
+
+	private static final String CHECKPOINT = "checkpoint.json";
+	private static final int CHECKPOINT_VERSION = 2;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path checkpointDir;
+	private final Duration interval;
+	private final String options;
+	private final List<Path> outputs;
+
+	private long lastCheckpointNanos = System.nanoTime();
+	private State current;
+	private int checkpoints;
+
+	private Checkpoint(Path checkpointDir, Duration interval, String options, List<Path> outputs) {
+		this.checkpointDir = checkpointDir;
+		this.interval = interval;
+		this.options = options;
+		this.outputs = outputs;
+	}
+
+	static Checkpoint open(ConversionOptions conversionOptions, DatasourceRegistry datasources, List<Path> outputs)
+			throws IOException {
+		for (Path output : outputs)
+			if (output.getFileName().toString().endsWith(".zst"))
+				throw new IOException("Checkpoints cannot be taken of the zstd output " + output
+						+ ", which cannot be appended to");
+		Files.createDirectories(conversionOptions.getCheckpointDir());
+		return new Checkpoint(conversionOptions.getCheckpointDir(), conversionOptions.getCheckpointInterval(),
+				options(conversionOptions, datasources), outputs);
+	}
+
+	// The rows written depend on these options and on the datasources, which give the terms their prefix and the
+	// mappings their datasource, so a checkpoint can only be resumed with the same ones.
+	private static String options(ConversionOptions conversionOptions, DatasourceRegistry datasources) {
+		return "include-prefixes=" + conversionOptions.getIncludedPrefixes()
+				+ " min-confidence=" + conversionOptions.getMinConfidence()
+				+ " normalized-edges=" + conversionOptions.isNormalizedEdges()
+				+ " datasources=" + SSSOMSnapshot.sha256(new Gson().toJson(datasources.getDatasources()));
+	}
+
+	// When resuming, reads the checkpoint, checks that it was taken by a run of the same files and options, and
+	// truncates the outputs to its lengths. Returns null if the conversion starts from the first file, after
+	// deleting any checkpoint of an earlier run that is not resumed.
+	State start(List<File> sssomInputFiles, boolean resume) throws IOException {
+		Path checkpointPath = checkpointDir.resolve(CHECKPOINT);
+		if (!resume) {
+			deleteCheckpoints();
+			return null;
+		}
+		if (!Files.exists(checkpointPath)) {
+			System.out.println("checkpoint: none in " + checkpointDir + ", starting from the first file");
+			return null;
+		}
+		State state;
+		try (Reader reader = Files.newBufferedReader(checkpointPath, StandardCharsets.UTF_8)) {
+			state = new Gson().fromJson(reader, State.class);
+		}
+		if (state.version != CHECKPOINT_VERSION)
+			throw new IOException(checkpointPath + " has version " + state.version + ", expected "
+					+ CHECKPOINT_VERSION);
+		if (!options.equals(state.options))
+			throw new IOException(checkpointPath + " was taken with " + state.options + ", not " + options);
+
+		if (state.files.size() > sssomInputFiles.size())
+			throw new IOException(checkpointPath + " has " + state.files.size() + " files done, the input only "
+					+ sssomInputFiles.size());
+		for (int i = 0; i < state.files.size(); i++) {
+			FileEntry done = state.files.get(i);
+			File file = sssomInputFiles.get(i);
+			if (!done.path.equals(file.getAbsolutePath()) || done.size != file.length()
+					|| done.lastModified != file.lastModified())
+				throw new IOException(file + " is not the file " + done.path + " the checkpoint was taken after, or"
+						+ " it changed since");
+		}
+
+		if (state.outputs.size() != outputs.size())
+			throw new IOException(checkpointPath + " has " + state.outputs.size() + " outputs, not "
+					+ outputs.size());
+		for (int i = 0; i < outputs.size(); i++) {
+			OutputEntry output = state.outputs.get(i);
+			Path path = outputs.get(i);
+			if (!output.path.equals(path.toAbsolutePath().toString()))
+				throw new IOException(checkpointPath + " was taken of " + output.path + ", not " + path);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				if (channel.size() < output.length)
+					throw new IOException(path + " has " + channel.size() + " bytes, fewer than the "
+							+ output.length + " of the checkpoint");
+				channel.truncate(output.length);
+			}
+		}
+
+		current = state;
+		System.out.println("checkpoint: resuming after " + state.files.size() + " of " + sssomInputFiles.size()
+				+ " files");
+		return state;
+	}
+
+	// Puts the state of the resumed checkpoint back into the node store and the prefix resolver, both still empty.
+	void restore(State state, NodeIdStore nodeIds, PrefixResolver prefixes) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(checkpointDir.resolve(state.nodesFile)), BUFFER_SIZE))) {
+			nodeIds.readFrom(in);
+		}
+		prefixes.addCurieMap(state.curieMap);
+	}
+
+	boolean isDue() {
+		return System.nanoTime() - lastCheckpointNanos >= interval.toNanos();
+	}
+
+	// Takes a checkpoint after the given files. Only called by the thread writing the outputs, between files.
+	void take(List<File> filesDone, String date, CsvGraphOutput output, NodeIdStore nodeIds,
+			  PrefixResolver prefixes) throws IOException {
+		long start = System.nanoTime();
+		output.sync();
+
+		State state = new State();
+		state.options = options;
+		state.date = date;
+		for (File file : filesDone) {
+			FileEntry entry = new FileEntry();
+			entry.path = file.getAbsolutePath();
+			entry.size = file.length();
+			entry.lastModified = file.lastModified();
+			state.files.add(entry);
+		}
+		for (Path path : outputs) {
+			OutputEntry entry = new OutputEntry();
+			entry.path = path.toAbsolutePath().toString();
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				channel.force(true);
+				entry.length = channel.size();
+			}
+			state.outputs.add(entry);
+		}
+		state.curieMap = prefixes.getCurieMap();
+
+		// a new node store file each time, so the previous checkpoint stays whole until this one replaces it
+		state.nodesFile = "nodes-" + filesDone.size() + ".bin";
+		Path nodesPath = checkpointDir.resolve(state.nodesFile);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(nodesPath), BUFFER_SIZE))) {
+			nodeIds.writeTo(out);
+		}
+		try (FileChannel channel = FileChannel.open(nodesPath, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+
+		Path checkpointPath = checkpointDir.resolve(CHECKPOINT);
+		Path temporary = checkpointDir.resolve(CHECKPOINT + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(state, writer);
+		}
+		Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		if (current != null && !Objects.equals(current.nodesFile, state.nodesFile))
+			Files.deleteIfExists(checkpointDir.resolve(current.nodesFile));
+		current = state;
+		checkpoints++;
+		lastCheckpointNanos = System.nanoTime();
+		System.out.println("checkpoint: " + filesDone.size() + " files done, " + nodeIds.size() + " nodes, took "
+				+ (lastCheckpointNanos - start) / 1_000_000 + " ms");
+	}
+
+	// Deletes the checkpoint of a conversion that is done, so it is not resumed.
+	void finish() throws IOException {
+		deleteCheckpoints();
+		if (checkpoints > 0)
+			System.out.println("checkpoint: took " + checkpoints + " checkpoints, removed the last one");
+	}
+
+	private void deleteCheckpoints() throws IOException {
+		Files.deleteIfExists(checkpointDir.resolve(CHECKPOINT));
+		try (var files = Files.list(checkpointDir)) {
+			for (Path file : (Iterable<Path>)files::iterator) {
+				String name = file.getFileName().toString();
+				if (name.startsWith("nodes-") && name.endsWith(".bin"))
+					Files.delete(file);
+			}
+		}
+	}
+
+	static class State {
+		int version = CHECKPOINT_VERSION;
+		String options = "";
+		String date;
+		List<FileEntry> files = new ArrayList<>();
+		List<OutputEntry> outputs = new ArrayList<>();
+		Map<String, String> curieMap;
+		String nodesFile;
+	}
+
+	static class FileEntry {
+		String path;
+		long size;
+		long lastModified;
+	}
+
+	static class OutputEntry {
+		String path;
+		long length;
+	}
+}
@@ -0,0 +1,121 @@
+package uk.ac.ebi;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+// Opens input and output files, compressed or not depending on their extension: .gz for gzip and .zst for zstd.
+class CompressedFiles {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static ThreadPoolExecutor compressors;
+	private static final LongAdder bytesWritten = new LongAdder();
+
+	static boolean isSSSOMFile(File file) {
+		String name = file.getName();
+		return name.endsWith(".tsv") || name.endsWith(".tsv.gz") || name.endsWith(".tsv.zst");
+	}
+
+	static ReadableByteChannel openChannel(File file) throws IOException {
+		String name = file.getName();
+		if (!name.endsWith(".gz") && !name.endsWith(".zst"))
+			return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return openChannel(Files.newInputStream(file.toPath()), name);
+	}
+
+	// Decompresses the raw bytes of the file with the given name, if its extension says so.
+	static ReadableByteChannel openChannel(InputStream in, String name) throws IOException {
+		try {
+			if (name.endsWith(".gz"))
+				in = new GZIPInputStream(in, BUFFER_SIZE);
+			else if (name.endsWith(".zst"))
+				in = new ZstdInputStream(in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return Channels.newChannel(in);
+	}
+
+	// Compressed outputs are compressed on the given number of threads.
+	static OutputStream openOutput(Path path, int threads) throws IOException {
+		return openOutput(path, threads, false);
+	}
+
+	// Appending to a gzip output adds members after the existing ones, which still makes a valid gzip file. Zstd
+	// outputs cannot be appended to.
+	static OutputStream openOutput(Path path, int threads, boolean append) throws IOException {
+		String name = path.getFileName().toString();
+		if (append && name.endsWith(".zst"))
+			throw new IOException("Cannot append to the zstd output " + path);
+		OutputStream out = new CountingOutputStream(append
+				? Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+				: Files.newOutputStream(path));
+		if (name.endsWith(".gz"))
+			return new ParallelGzipOutputStream(out, compressors(threads), threads);
+		if (name.endsWith(".zst")) {
+			ZstdOutputStream zstd = new ZstdOutputStream(out);
+			if (threads > 1)
+				zstd.setWorkers(threads);
+			return new BufferedOutputStream(zstd, BUFFER_SIZE);
+		}
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	// Bytes written to the output files so far, after compression, by every output opened here.
+	static long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	// One pool for all outputs, as large as the most threads any output asked for.
+	private static synchronized ExecutorService compressors(int threads) {
+		if (compressors == null) {
+			compressors = (ThreadPoolExecutor)Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "compressor");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else if (threads > compressors.getMaximumPoolSize()) {
+			compressors.setMaximumPoolSize(threads);
+			compressors.setCorePoolSize(threads);
+		}
+		return compressors;
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			bytesWritten.increment();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			bytesWritten.add(len);
+		}
+	}
+}
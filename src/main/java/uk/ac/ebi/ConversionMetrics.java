@@ -0,0 +1,297 @@
+package uk.ac.ebi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.google.gson.GsonBuilder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// What a conversion did: rows and nodes per file, how many candidate nodes were already known, how many nodes never
+// got a label, which prefixes did not resolve, the bytes written and the peak heap. It is printed as progress lines
+// while the conversion runs and as a summary at the end, can be written as a JSON report, and each file and the run
+// as a whole are JFR events, so a flight recording shows them next to GC and I/O.
+//
+// The counters are only updated by the thread writing the outputs, once per batch, and read by the progress thread.
+class ConversionMetrics {
+
+	private static final int TOP_UNRESOLVED_PREFIXES = 20;
+
+	private final NodeIdStore nodeIds;
+	private final int fileCount;
+	private final Instant start = Instant.now();
+	private final long startNanos = System.nanoTime();
+	private final long bytesWrittenAtStart = CompressedFiles.getBytesWritten();
+	private final ConversionFinishedEvent runEvent = new ConversionFinishedEvent();
+
+	private volatile int filesDone;
+	private volatile String currentFile;
+	private volatile long rows;
+	private volatile long candidateNodes;
+	private volatile long nodes;
+	private long nodesWithoutLabel = -1;
+
+	private final List<FileReport> files = new ArrayList<>();
+	private FileReport file;
+	private long fileStartNanos;
+	private FileConvertedEvent fileEvent;
+
+	private ScheduledExecutorService progress;
+	private long progressRows;
+	private long progressNanos;
+
+	ConversionMetrics(int fileCount, NodeIdStore nodeIds) {
+		this.fileCount = fileCount;
+		this.nodeIds = nodeIds;
+		// so the peaks are those of this conversion
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		runEvent.begin();
+	}
+
+	// Prints a progress line at the given interval, until finish.
+	void startProgress(Duration interval) {
+		if (interval.isZero() || interval.isNegative())
+			return;
+		progressNanos = startNanos;
+		progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		progress.scheduleAtFixedRate(this::printProgress, interval.toMillis(), interval.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	void stopProgress() {
+		if (progress != null)
+			progress.shutdownNow();
+	}
+
+	void startFile(File sssomFile) {
+		file = new FileReport();
+		file.path = sssomFile.getPath();
+		fileStartNanos = System.nanoTime();
+		fileEvent = new FileConvertedEvent();
+		fileEvent.begin();
+		currentFile = sssomFile.getName();
+	}
+
+	void batchWritten(MappingBatch batch, long newNodes) {
+		file.rows += batch.edgeCount;
+		file.candidateNodes += batch.nodeCount + batch.knownNodes;
+		file.newNodes += newNodes;
+		rows += batch.edgeCount;
+		candidateNodes += batch.nodeCount + batch.knownNodes;
+		nodes += newNodes;
+	}
+
+	void finishFile(MappingBatchTask task) {
+		long nanos = System.nanoTime() - fileStartNanos;
+		file.seconds = seconds(nanos);
+		file.readSeconds = seconds(task.getReadNanos());
+		file.rowsPerSecond = perSecond(file.rows, nanos);
+		files.add(file);
+
+		fileEvent.file = file.path;
+		fileEvent.rows = file.rows;
+		fileEvent.candidateNodes = file.candidateNodes;
+		fileEvent.newNodes = file.newNodes;
+		fileEvent.readTime = task.getReadNanos();
+		fileEvent.commit();
+
+		filesDone++;
+		currentFile = null;
+	}
+
+	// For node resolutions that only know the nodes at the end, instead of the NodeIdStore.
+	void nodesResolved(long nodes, long nodesWithoutLabel) {
+		this.nodes = nodes;
+		this.nodesWithoutLabel = nodesWithoutLabel;
+	}
+
+	// Stops the progress lines, prints the summary and returns the report. Called once the outputs are closed.
+	RunReport finish(PrefixResolver prefixes) {
+		stopProgress();
+
+		long nanos = System.nanoTime() - startNanos;
+		RunReport report = new RunReport();
+		report.start = start.toString();
+		report.seconds = seconds(nanos);
+		report.files = files;
+		report.rows = rows;
+		report.rowsPerSecond = perSecond(rows, nanos);
+		report.candidateNodes = candidateNodes;
+		report.nodes = nodes;
+		report.dedupHits = candidateNodes - nodes;
+		report.dedupHitRate = candidateNodes == 0 ? 0 : (double)report.dedupHits / candidateNodes;
+		report.nodesWithoutLabel = nodesWithoutLabel >= 0 ? nodesWithoutLabel : nodeIds.pendingCount();
+		report.resolvedPrefixes = prefixes.getExactHits();
+		report.resolvedPrefixesIgnoringCase = prefixes.getFoldedHits();
+		report.unresolvedPrefixes = prefixes.getMisses();
+		report.unresolvedPrefixesByPrefix = prefixes.getMissesByPrefix();
+		report.bytesWritten = CompressedFiles.getBytesWritten() - bytesWrittenAtStart;
+		report.peakHeapBytes = peakHeapBytes();
+		report.nodeStoreBytes = nodeIds.getAllocatedBytes();
+
+		ConversionFinishedEvent event = runEvent;
+		event.files = files.size();
+		event.rows = report.rows;
+		event.nodes = report.nodes;
+		event.dedupHits = report.dedupHits;
+		event.nodesWithoutLabel = report.nodesWithoutLabel;
+		event.unresolvedPrefixes = report.unresolvedPrefixes;
+		event.bytesWritten = report.bytesWritten;
+		event.peakHeap = report.peakHeapBytes;
+		event.commit();
+
+		System.out.println("prefixes: " + report.resolvedPrefixes + " resolved, "
+				+ report.resolvedPrefixesIgnoringCase + " resolved ignoring case, " + report.unresolvedPrefixes
+				+ " unresolved " + report.unresolvedPrefixesByPrefix.entrySet().stream()
+						.limit(TOP_UNRESOLVED_PREFIXES).collect(Collectors.toList()));
+		System.out.println(String.format("converted %d rows from %d files in %.1fs (%.0f rows/s): %d nodes from %d"
+						+ " candidates (%.1f%% already seen), %d without a label; %s written, peak heap %s",
+				report.rows, files.size(), report.seconds, report.rowsPerSecond, report.nodes, report.candidateNodes,
+				100 * report.dedupHitRate, report.nodesWithoutLabel, bytes(report.bytesWritten),
+				bytes(report.peakHeapBytes)));
+		return report;
+	}
+
+	static void writeReport(RunReport report, Path path) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+		}
+	}
+
+	private void printProgress() {
+		long now = System.nanoTime();
+		long rows = this.rows;
+		String current = currentFile;
+		System.out.println(String.format("progress: %d/%d files%s, %d rows (%.0f rows/s), %d nodes, %s written,"
+						+ " heap %s",
+				filesDone, fileCount, current != null ? ", reading " + current : "", rows,
+				perSecond(rows - progressRows, now - progressNanos), nodes,
+				bytes(CompressedFiles.getBytesWritten() - bytesWrittenAtStart),
+				bytes(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed())));
+		progressRows = rows;
+		progressNanos = now;
+	}
+
+	// The sum of the peaks of the heap pools, which did not necessarily peak at the same time.
+	private static long peakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return nanos <= 0 ? 0 : count * 1e9 / nanos;
+	}
+
+	private static String bytes(long bytes) {
+		if (bytes < 1 << 20)
+			return String.format("%.1f KB", bytes / 1024.0);
+		if (bytes < 1 << 30)
+			return String.format("%.1f MB", bytes / (double)(1 << 20));
+		return String.format("%.1f GB", bytes / (double)(1 << 30));
+	}
+
+	// The JSON run report.
+	static class RunReport {
+		String start;
+		double seconds;
+		long rows;
+		double rowsPerSecond;
+		long candidateNodes;
+		long nodes;
+		long dedupHits;
+		double dedupHitRate;
+		long nodesWithoutLabel;
+		long resolvedPrefixes;
+		long resolvedPrefixesIgnoringCase;
+		long unresolvedPrefixes;
+		Map<String, Long> unresolvedPrefixesByPrefix;
+		long bytesWritten;
+		long peakHeapBytes;
+		long nodeStoreBytes;
+		List<FileReport> files;
+	}
+
+	static class FileReport {
+		String path;
+		long rows;
+		long candidateNodes;
+		long newNodes;
+		double seconds;
+		double readSeconds;
+		double rowsPerSecond;
+	}
+
+	@Name("uk.ac.ebi.FileConverted")
+	@Label("SSSOM File Converted")
+	@Category({ "OxO", "Conversion" })
+	static class FileConvertedEvent extends Event {
+		@Label("File")
+		String file;
+		@Label("Rows")
+		long rows;
+		@Label("Candidate Nodes")
+		long candidateNodes;
+		@Label("New Nodes")
+		long newNodes;
+		@Label("Read Time")
+		@Timespan
+		long readTime;
+	}
+
+	@Name("uk.ac.ebi.ConversionFinished")
+	@Label("Conversion Finished")
+	@Category({ "OxO", "Conversion" })
+	static class ConversionFinishedEvent extends Event {
+		@Label("Files")
+		int files;
+		@Label("Rows")
+		long rows;
+		@Label("Nodes")
+		long nodes;
+		@Label("Dedup Hits")
+		long dedupHits;
+		@Label("Nodes Without Label")
+		long nodesWithoutLabel;
+		@Label("Unresolved Prefixes")
+		long unresolvedPrefixes;
+		@Label("Bytes Written")
+		@DataAmount
+		long bytesWritten;
+		@Label("Peak Heap")
+		@DataAmount
+		long peakHeap;
+	}
+}
@@ -0,0 +1,499 @@
+package uk.ac.ebi;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ConversionOptions {
+
+	// Where the NodeIdStore keeps the seen node ids.
+	public enum NodeStore {
+		HEAP,
+		OFF_HEAP
+	}
+
+	// How the label of each node is decided.
+	public enum NodeResolution {
+		// the first occurrence of a node decides, the nodes are kept in a NodeIdStore and printed as they are seen
+		STREAMING,
+		// every occurrence is a candidate, the candidates are sorted on disk and the nodes printed in CURIE order
+		SORTED
+	}
+
+	// Which label sorted node resolution keeps when a node has several.
+	public enum LabelChoice {
+		FIRST,
+		MOST_FREQUENT
+	}
+
+	private int threads = 1;
+	private int compressionThreads = Runtime.getRuntime().availableProcessors();
+	private boolean nodeStoreOffHeap = false;
+	private long nodeStoreMemoryBudget = Long.MAX_VALUE;
+	private List<String> includedPrefixes = null;
+	private double minConfidence = Double.NaN;
+	private Path manifestDir = null;
+	private Path deltaDir = null;
+	private Path bulkImportDir = null;
+	private Path snapshotDir = null;
+	private Path solrDir = null;
+	private int solrChunkSize = 5000;
+	private String solrUrl = null;
+	private int shards = 1;
+	private NodeResolution nodeResolution = NodeResolution.STREAMING;
+	private LabelChoice labelChoice = LabelChoice.FIRST;
+	private long nodeSortMemoryBudget = 256L << 20;
+	private boolean aggregateMappings = false;
+	private boolean normalizedEdges = false;
+	private long aggregateMemoryBudget = 256L << 20;
+	private Path spillDir = Path.of(System.getProperty("java.io.tmpdir"));
+	private Duration progressInterval = Duration.ofSeconds(30);
+	private Path reportPath = null;
+	private Path checkpointDir = null;
+	private Duration checkpointInterval = Duration.ofMinutes(10);
+	private boolean resume = false;
+	private Path neo4jConfig = null;
+	private int neo4jBatchSize = 10000;
+	private int neo4jParallelism = 4;
+	private boolean neo4jWipe = false;
+	private int neo4jWipeBatchSize = 50000;
+	private boolean neo4jEncrypted = false;
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public ConversionOptions setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+		this.threads = threads;
+		return this;
+	}
+
+	public int getCompressionThreads() {
+		return compressionThreads;
+	}
+
+	// Threads compressing the .gz and .zst outputs.
+	public ConversionOptions setCompressionThreads(int compressionThreads) {
+		if (compressionThreads < 1)
+			throw new IllegalArgumentException("compression threads must be at least 1, got " + compressionThreads);
+		this.compressionThreads = compressionThreads;
+		return this;
+	}
+
+	public boolean isNodeStoreOffHeap() {
+		return nodeStoreOffHeap;
+	}
+
+	public ConversionOptions setNodeStoreOffHeap(boolean nodeStoreOffHeap) {
+		this.nodeStoreOffHeap = nodeStoreOffHeap;
+		return this;
+	}
+
+	public long getNodeStoreMemoryBudget() {
+		return nodeStoreMemoryBudget;
+	}
+
+	public ConversionOptions setNodeStoreMemoryBudget(long nodeStoreMemoryBudget) {
+		this.nodeStoreMemoryBudget = nodeStoreMemoryBudget;
+		return this;
+	}
+
+	public List<String> getIncludedPrefixes() {
+		return includedPrefixes;
+	}
+
+	// Only convert mappings with a subject or object prefix in this list, null for all mappings. Prefixes are
+	// trimmed, so GO, HP works as well as GO,HP, and empty ones are left out.
+	public ConversionOptions setIncludedPrefixes(List<String> includedPrefixes) {
+		if (includedPrefixes == null) {
+			this.includedPrefixes = null;
+			return this;
+		}
+		List<String> prefixes = includedPrefixes.stream()
+				.map(String::trim)
+				.filter(prefix -> !prefix.isEmpty())
+				.collect(Collectors.toList());
+		if (prefixes.isEmpty())
+			throw new IllegalArgumentException("No prefixes to include in " + includedPrefixes);
+		this.includedPrefixes = List.copyOf(prefixes);
+		return this;
+	}
+
+	public double getMinConfidence() {
+		return minConfidence;
+	}
+
+	// Only convert mappings with at least this confidence, NaN for all mappings.
+	public ConversionOptions setMinConfidence(double minConfidence) {
+		this.minConfidence = minConfidence;
+		return this;
+	}
+
+	public Path getManifestDir() {
+		return manifestDir;
+	}
+
+	// Turns on incremental rebuilds, keeping the manifest and the per-file contributions in this directory.
+	public ConversionOptions setManifestDir(Path manifestDir) {
+		this.manifestDir = manifestDir;
+		return this;
+	}
+
+	public Path getDeltaDir() {
+		return deltaDir != null || manifestDir == null ? deltaDir : manifestDir.resolve("delta");
+	}
+
+	public ConversionOptions setDeltaDir(Path deltaDir) {
+		this.deltaDir = deltaDir;
+		return this;
+	}
+
+	public Path getBulkImportDir() {
+		return bulkImportDir;
+	}
+
+	// Writes neo4j-admin import files to this directory instead of the terms and mappings CSV files.
+	public ConversionOptions setBulkImportDir(Path bulkImportDir) {
+		this.bulkImportDir = bulkImportDir;
+		return this;
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	// Splits the terms and mappings CSV files into this many shards.
+	public ConversionOptions setShards(int shards) {
+		if (shards < 1)
+			throw new IllegalArgumentException("shards must be at least 1, got " + shards);
+		this.shards = shards;
+		return this;
+	}
+
+	public NodeResolution getNodeResolution() {
+		return nodeResolution;
+	}
+
+	public ConversionOptions setNodeResolution(NodeResolution nodeResolution) {
+		this.nodeResolution = nodeResolution;
+		return this;
+	}
+
+	public LabelChoice getLabelChoice() {
+		return labelChoice;
+	}
+
+	public ConversionOptions setLabelChoice(LabelChoice labelChoice) {
+		this.labelChoice = labelChoice;
+		return this;
+	}
+
+	public long getNodeSortMemoryBudget() {
+		return nodeSortMemoryBudget;
+	}
+
+	// Memory for the node candidates sorted before they are spilled to disk.
+	public ConversionOptions setNodeSortMemoryBudget(long nodeSortMemoryBudget) {
+		this.nodeSortMemoryBudget = nodeSortMemoryBudget;
+		return this;
+	}
+
+	public boolean isAggregateMappings() {
+		return aggregateMappings;
+	}
+
+	// Writes one mapping per fromCurie, toCurie and datasource prefix, with how many rows asserted it and where.
+	public ConversionOptions setAggregateMappings(boolean aggregateMappings) {
+		this.aggregateMappings = aggregateMappings;
+		return this;
+	}
+
+	public boolean isNormalizedEdges() {
+		return normalizedEdges;
+	}
+
+	// Leaves the datasource JSON out of the mappings, which only reference their datasource by its prefix.
+	public ConversionOptions setNormalizedEdges(boolean normalizedEdges) {
+		this.normalizedEdges = normalizedEdges;
+		return this;
+	}
+
+	Oxo1SSSOM2Neo.MappingHeader[] getMappingColumns() {
+		return Oxo1SSSOM2Neo.MappingHeader.columns(normalizedEdges);
+	}
+
+	public long getAggregateMemoryBudget() {
+		return aggregateMemoryBudget;
+	}
+
+	// Memory for the aggregated mappings before they are spilled to disk.
+	public ConversionOptions setAggregateMemoryBudget(long aggregateMemoryBudget) {
+		this.aggregateMemoryBudget = aggregateMemoryBudget;
+		return this;
+	}
+
+	public Path getSpillDir() {
+		return spillDir;
+	}
+
+	// Where sorted node resolution and mapping aggregation spill what does not fit in their memory budget.
+	public ConversionOptions setSpillDir(Path spillDir) {
+		this.spillDir = spillDir;
+		return this;
+	}
+
+	public Duration getProgressInterval() {
+		return progressInterval;
+	}
+
+	// How often to print a progress line while converting, zero for never.
+	public ConversionOptions setProgressInterval(Duration progressInterval) {
+		this.progressInterval = progressInterval;
+		return this;
+	}
+
+	public Path getSnapshotDir() {
+		return snapshotDir;
+	}
+
+	// Keeps a snapshot of every parsed SSSOM file in this directory, and reads unchanged files from it.
+	public ConversionOptions setSnapshotDir(Path snapshotDir) {
+		this.snapshotDir = snapshotDir;
+		return this;
+	}
+
+	public Path getSolrDir() {
+		return solrDir;
+	}
+
+	// Also writes the terms and mappings as chunks of Solr JSON documents to this directory.
+	public ConversionOptions setSolrDir(Path solrDir) {
+		this.solrDir = solrDir;
+		return this;
+	}
+
+	public int getSolrChunkSize() {
+		return solrChunkSize;
+	}
+
+	public ConversionOptions setSolrChunkSize(int solrChunkSize) {
+		if (solrChunkSize < 1)
+			throw new IllegalArgumentException("Solr chunks need at least one document, not " + solrChunkSize);
+		this.solrChunkSize = solrChunkSize;
+		return this;
+	}
+
+	public String getSolrUrl() {
+		return solrUrl;
+	}
+
+	// Posts the Solr documents to the /update handler under this URL, e.g. http://localhost:8983/solr/oxo.
+	public ConversionOptions setSolrUrl(String solrUrl) {
+		this.solrUrl = solrUrl;
+		return this;
+	}
+
+	public Path getReportPath() {
+		return reportPath;
+	}
+
+	// Writes a JSON report of the conversion to this file.
+	public ConversionOptions setReportPath(Path reportPath) {
+		this.reportPath = reportPath;
+		return this;
+	}
+
+	public Path getCheckpointDir() {
+		return checkpointDir;
+	}
+
+	// Takes checkpoints of the conversion in this directory, which a later run can resume from.
+	public ConversionOptions setCheckpointDir(Path checkpointDir) {
+		this.checkpointDir = checkpointDir;
+		return this;
+	}
+
+	public Duration getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	// How long to wait after a checkpoint before taking the next one, after the next file is done.
+	public ConversionOptions setCheckpointInterval(Duration checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+		return this;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	// Continues from the checkpoint in the checkpoint directory, if there is one.
+	public ConversionOptions setResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+	public Path getNeo4jConfig() {
+		return neo4jConfig;
+	}
+
+	// Also loads the terms and mappings into the Neo4j of this config.ini, as OxoNeo4jLoader.py does.
+	public ConversionOptions setNeo4jConfig(Path neo4jConfig) {
+		this.neo4jConfig = neo4jConfig;
+		return this;
+	}
+
+	public int getNeo4jBatchSize() {
+		return neo4jBatchSize;
+	}
+
+	// Rows per UNWIND statement, each in a transaction of its own.
+	public ConversionOptions setNeo4jBatchSize(int neo4jBatchSize) {
+		if (neo4jBatchSize < 1)
+			throw new IllegalArgumentException("Neo4j batches need at least one row, not " + neo4jBatchSize);
+		this.neo4jBatchSize = neo4jBatchSize;
+		return this;
+	}
+
+	public int getNeo4jParallelism() {
+		return neo4jParallelism;
+	}
+
+	// Batches loaded at the same time.
+	public ConversionOptions setNeo4jParallelism(int neo4jParallelism) {
+		if (neo4jParallelism < 1)
+			throw new IllegalArgumentException("Neo4j parallelism must be at least 1, got " + neo4jParallelism);
+		this.neo4jParallelism = neo4jParallelism;
+		return this;
+	}
+
+	public boolean isNeo4jWipe() {
+		return neo4jWipe;
+	}
+
+	// Deletes the terms, mappings and datasources already in Neo4j before loading.
+	public ConversionOptions setNeo4jWipe(boolean neo4jWipe) {
+		this.neo4jWipe = neo4jWipe;
+		return this;
+	}
+
+	public int getNeo4jWipeBatchSize() {
+		return neo4jWipeBatchSize;
+	}
+
+	// Nodes or relationships deleted per transaction when wiping, as many as OxoNeo4jLoader.py deletes.
+	public ConversionOptions setNeo4jWipeBatchSize(int neo4jWipeBatchSize) {
+		if (neo4jWipeBatchSize < 1)
+			throw new IllegalArgumentException("Neo4j wipe batches need at least one row, not " + neo4jWipeBatchSize);
+		this.neo4jWipeBatchSize = neo4jWipeBatchSize;
+		return this;
+	}
+
+	public boolean isNeo4jEncrypted() {
+		return neo4jEncrypted;
+	}
+
+	public ConversionOptions setNeo4jEncrypted(boolean neo4jEncrypted) {
+		this.neo4jEncrypted = neo4jEncrypted;
+		return this;
+	}
+
+	// Throws an IllegalArgumentException for options that do not work together.
+	void validate() {
+		if (shards > 1 && bulkImportDir != null)
+			throw new IllegalArgumentException("Shards are only written for the CSV outputs, not for a bulk import");
+		if (nodeResolution == NodeResolution.SORTED && bulkImportDir != null)
+			throw new IllegalArgumentException("Sorted node resolution cannot write a bulk import, whose mappings"
+					+ " refer to term ids given in the order the nodes are first seen");
+		if (nodeResolution == NodeResolution.SORTED && manifestDir != null)
+			throw new IllegalArgumentException("Sorted node resolution cannot be used with incremental builds, whose"
+					+ " contributions only keep the first occurrence of each node");
+		if (aggregateMappings && manifestDir != null)
+			throw new IllegalArgumentException("Aggregated mappings cannot be used with incremental builds, whose"
+					+ " deltas add and remove mapping rows");
+		if (snapshotDir != null && manifestDir != null)
+			throw new IllegalArgumentException("Snapshots cannot be used with incremental builds, which replay"
+					+ " unchanged files from their contributions");
+		if (solrUrl != null && solrDir == null)
+			throw new IllegalArgumentException("Solr documents are posted from the chunks in the Solr directory,"
+					+ " which has to be given as well");
+		if (resume && checkpointDir == null)
+			throw new IllegalArgumentException("Resuming needs the checkpoint directory of the interrupted run");
+		if (checkpointDir != null && (bulkImportDir != null || shards > 1 || solrDir != null))
+			throw new IllegalArgumentException("Checkpoints are only taken of the terms and mappings CSV files, not"
+					+ " of a bulk import, shards or Solr documents");
+		if (checkpointDir != null && (aggregateMappings || nodeResolution == NodeResolution.SORTED))
+			throw new IllegalArgumentException("Checkpoints cannot be taken with aggregated mappings or sorted node"
+					+ " resolution, which only write their outputs at the end");
+		if (checkpointDir != null && manifestDir != null)
+			throw new IllegalArgumentException("Checkpoints cannot be used with incremental builds, which already"
+					+ " replay unchanged files");
+		if (checkpointDir != null && neo4jConfig != null)
+			throw new IllegalArgumentException("Checkpoints cannot be taken of a load into Neo4j, which would have"
+					+ " to be started over");
+		if ((neo4jWipe || neo4jEncrypted) && neo4jConfig == null)
+			throw new IllegalArgumentException("Wiping or encrypting Neo4j needs the config.ini of the Neo4j to"
+					+ " load into");
+	}
+
+	SSSOMProjection getProjection() {
+		SSSOMProjection projection = SSSOMProjection.forOutputs();
+		if (includedPrefixes != null)
+			projection.withIncludedPrefixes(includedPrefixes);
+		if (!Double.isNaN(minConfidence))
+			projection.withMinConfidence(minConfidence);
+		return projection;
+	}
+
+	// Parses enum values such as most-frequent.
+	static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+		try {
+			return Enum.valueOf(type, value.trim().toUpperCase().replace('-', '_'));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(value + " is not one of " + Arrays.stream(type.getEnumConstants())
+					.map(constant -> constant.name().toLowerCase().replace('_', '-'))
+					.collect(Collectors.joining(", ")));
+		}
+	}
+
+	// Parses sizes such as 512m or 4g into a number of bytes.
+	static long parseByteSize(String size) {
+		String value = size.trim().toLowerCase();
+		if (value.isEmpty())
+			throw new IllegalArgumentException("Not a size such as 512m or 4g: " + size);
+		long multiplier = 1;
+		switch (value.charAt(value.length() - 1)) {
+			case 'k': multiplier = 1L << 10; break;
+			case 'm': multiplier = 1L << 20; break;
+			case 'g': multiplier = 1L << 30; break;
+			case 't': multiplier = 1L << 40; break;
+		}
+		if (multiplier > 1)
+			value = value.substring(0, value.length() - 1);
+		try {
+			return Long.parseLong(value) * multiplier;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a size such as 512m or 4g: " + size);
+		}
+	}
+
+	// Parses durations such as 30m, 12h or 7d, in seconds without a unit.
+	static Duration parseDuration(String duration) {
+		String value = duration.trim().toLowerCase();
+		try {
+			switch (value.charAt(value.length() - 1)) {
+				case 's': return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+				case 'm': return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+				case 'h': return Duration.ofHours(Long.parseLong(value.substring(0, value.length() - 1)));
+				case 'd': return Duration.ofDays(Long.parseLong(value.substring(0, value.length() - 1)));
+				default: return Duration.ofSeconds(Long.parseLong(value));
+			}
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Not a duration such as 30s, 10m, 12h or 7d: " + duration);
+		}
+	}
+}
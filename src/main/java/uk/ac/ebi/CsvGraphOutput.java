@@ -0,0 +1,104 @@
+package uk.ac.ebi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// The terms and mappings CSV files loaded by OxoNeo4jLoader.py, with the TermHeader and MappingHeader columns, in
+// UTF-8. Each file is printed on its own WriterStage thread, the caller only works out what goes in the rows.
+//
+// Aggregated mappings have two more columns: how many rows asserted the mapping, and the mapping sets they came from.
+// Normalized edges have every MappingHeader column but the datasource JSON.
+class CsvGraphOutput implements GraphOutput {
+
+	static final String[] AGGREGATE_HEADER = { "count", "sources" };
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final WriterStage nodes;
+	private final WriterStage edges;
+
+	CsvGraphOutput(Path outputNodesPath, Path outputEdgesPath, int compressionThreads,
+				   Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, boolean aggregatedMappings) throws IOException {
+		this(outputNodesPath, outputEdgesPath, compressionThreads, mappingColumns, aggregatedMappings, false);
+	}
+
+	// Appending continues outputs that already have their header, such as those of a checkpoint.
+	CsvGraphOutput(Path outputNodesPath, Path outputEdgesPath, int compressionThreads,
+				   Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, boolean aggregatedMappings, boolean append)
+			throws IOException {
+		this(writer(outputNodesPath, compressionThreads, append), writer(outputEdgesPath, compressionThreads, append),
+				mappingColumns, aggregatedMappings, append);
+	}
+
+	CsvGraphOutput(Appendable nodesOut, Appendable edgesOut) throws IOException {
+		this(nodesOut, edgesOut, Oxo1SSSOM2Neo.MappingHeader.values(), false, false);
+	}
+
+	CsvGraphOutput(Appendable nodesOut, Appendable edgesOut, Oxo1SSSOM2Neo.MappingHeader[] mappingColumns,
+				   boolean aggregatedMappings, boolean append) throws IOException {
+		List<String> edgesHeader = new ArrayList<>(Oxo1SSSOM2Neo.MappingHeader.asSetOfString(mappingColumns));
+		if (aggregatedMappings)
+			edgesHeader.addAll(List.of(AGGREGATE_HEADER));
+
+		nodes = new WriterStage("terms", Oxo1SSSOM2Neo.CSV_FORMAT
+				.withHeader(Oxo1SSSOM2Neo.TermHeader.asListOfString().toArray(new String[0]))
+				.withSkipHeaderRecord(append).print(nodesOut),
+				(printer, context, nodeId, nodeLabel, uri, prefix) ->
+						printer.printRecord(Oxo1SSSOM2Neo.termRow(nodeId, nodeLabel, uri, prefix)));
+		edges = new WriterStage("mappings", Oxo1SSSOM2Neo.CSV_FORMAT
+				.withHeader(edgesHeader.toArray(new String[0])).withSkipHeaderRecord(append).print(edgesOut),
+				(printer, rowPlan, fromId, toId, count, sources) -> {
+					if (count == null)
+						((EdgeRowPlan)rowPlan).print(printer, fromId, toId);
+					else
+						((EdgeRowPlan)rowPlan).print(printer, fromId, toId, count, sources);
+				});
+	}
+
+	private static Writer writer(Path path, int compressionThreads, boolean append) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(CompressedFiles.openOutput(path, compressionThreads, append),
+				StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	// Flushes every row written so far to the files, gzip outputs up to the end of a member.
+	void sync() throws IOException {
+		try {
+			nodes.sync();
+		} finally {
+			edges.sync();
+		}
+	}
+
+	// The URI is resolved here, with the curie_maps of the files read so far, as when printing synchronously.
+	@Override
+	public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException {
+		nodes.write(null, nodeId, nodeLabel, Oxo1SSSOM2Neo.termUri(nodeId, prefixes),
+				Oxo1SSSOM2Neo.termPrefix(nodeId, prefixes));
+	}
+
+	@Override
+	public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException {
+		edges.write(rowPlan, fromId, toId, null, null);
+	}
+
+	@Override
+	public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		edges.write(rowPlan, fromId, toId, Long.toString(count), sources);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			nodes.close();
+		} finally {
+			edges.close();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package uk.ac.ebi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// The datasources of a conversion, looked up by their preferred prefix or any of their alternative prefixes, in any
+// case, so go, GO and the alternative prefix of an ontology whose preferred prefix differs all find the same datasource.
+// Lookups go through an open-addressing table keyed on the case-folded prefix, and compare the prefix in place in the
+// CURIE, like PrefixResolver, so they do not allocate.
+//
+// The registry is immutable once built, and shared by the reader threads. When a preferred prefix of one datasource is
+// an alternative prefix of another, the preferred one wins; between alternative prefixes, the datasource that comes
+// first in prefix order does.
+final class DatasourceRegistry {
+
+	private static final DatasourceRegistry EMPTY = of(Map.of());
+
+	private final List<Datasources.Datasource> datasources;
+	private final String[] keys;
+	private final Datasources.Datasource[] values;
+
+	private DatasourceRegistry(List<Datasources.Datasource> datasources) {
+		this.datasources = datasources;
+		int prefixCount = 0;
+		for (Datasources.Datasource datasource : datasources)
+			prefixCount += 1 + datasource.alternativePrefixes.size();
+		int capacity = Integer.highestOneBit(Math.max(prefixCount, 4) * 2) * 2;
+		keys = new String[capacity];
+		values = new Datasources.Datasource[capacity];
+		for (Datasources.Datasource datasource : datasources)
+			insert(datasource.getPrefix(), datasource);
+		for (Datasources.Datasource datasource : datasources)
+			for (String alternativePrefix : datasource.alternativePrefixes)
+				if (alternativePrefix != null && !alternativePrefix.isEmpty())
+					insert(alternativePrefix, datasource);
+	}
+
+	static DatasourceRegistry of(Map<String, Datasources.Datasource> datasources) {
+		List<Datasources.Datasource> sorted = new ArrayList<>(datasources.values());
+		sorted.sort(Comparator.comparing(Datasources.Datasource::getPrefix));
+		return new DatasourceRegistry(List.copyOf(sorted));
+	}
+
+	static DatasourceRegistry empty() {
+		return EMPTY;
+	}
+
+	// The datasources, in prefix order.
+	List<Datasources.Datasource> getDatasources() {
+		return datasources;
+	}
+
+	int size() {
+		return datasources.size();
+	}
+
+	Datasources.Datasource find(String prefix) {
+		return find(prefix, prefix.length());
+	}
+
+	// The datasource of the prefix made of the first prefixEnd characters of the CURIE, or null.
+	Datasources.Datasource find(String curie, int prefixEnd) {
+		if (prefixEnd < 0)
+			return null;
+		int mask = keys.length - 1;
+		int slot = hash(curie, prefixEnd) & mask;
+		String key;
+		while ((key = keys[slot]) != null) {
+			if (key.length() == prefixEnd && curie.regionMatches(true, 0, key, 0, prefixEnd))
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	// The preferred prefix of the datasource of a CURIE's prefix, or the prefix itself if it has no datasource.
+	String canonicalPrefix(String curie, int prefixEnd) {
+		Datasources.Datasource datasource = find(curie, prefixEnd);
+		return datasource != null ? datasource.getPrefix() : curie.substring(0, prefixEnd);
+	}
+
+	private void insert(String prefix, Datasources.Datasource datasource) {
+		if (find(prefix) != null)
+			return;
+		int mask = keys.length - 1;
+		int slot = hash(prefix, prefix.length()) & mask;
+		while (keys[slot] != null)
+			slot = (slot + 1) & mask;
+		keys[slot] = prefix;
+		values[slot] = datasource;
+	}
+
+	private static int hash(String s, int end) {
+		int h = 0;
+		for (int i = 0; i < end; i++)
+			h = 31 * h + Character.toUpperCase(s.charAt(i));
+		return h ^ (h >>> 16);
+	}
+}
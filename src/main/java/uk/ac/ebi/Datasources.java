@@ -1,16 +1,15 @@
 package uk.ac.ebi;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.hc.client5.http.classic.methods.HttpGet;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 import javax.xml.crypto.Data;
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.Reader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -18,110 +17,208 @@ public class Datasources {
 
     public static Map<String,Datasource>  getAndGenerateOLSDatasourcesCSV(String olsUrl, Path outputPath)
             throws IOException {
+        return getAndGenerateOLSDatasourcesCSV(new OLSOntologiesFetcher(olsUrl), outputPath);
+    }
+
+    public static Map<String,Datasource>  getAndGenerateOLSDatasourcesCSV(OLSOntologiesFetcher fetcher,
+                                                                         Path outputPath) throws IOException {
 
-        Map<String,Datasource> olsDatasources = getOntologiesFromOLS(olsUrl);
+        Map<String,Datasource> olsDatasources = fetcher.fetch();
         if (olsDatasources.isEmpty())
             return new HashMap<>();
 
+        generateDatasourcesCSV(olsDatasources, outputPath);
+
+        return olsDatasources;
+    }
+
+    public static void generateDatasourcesCSV(Map<String,Datasource> datasources, Path outputPath)
+            throws IOException {
         var datasourcesPrinter = CSVFormat.POSTGRESQL_CSV.withHeader(
                 DatasourcesHeader.asSetOfString().toArray(new String[0])).print(
-                outputPath.toFile(), Charset.defaultCharset());
+                new OutputStreamWriter(CompressedFiles.openOutput(outputPath, 1), StandardCharsets.UTF_8));
 
-        for (Map.Entry<String, Datasource> entry : olsDatasources.entrySet()) {
+        for (Map.Entry<String, Datasource> entry : datasources.entrySet()) {
             Datasource datasource = entry.getValue();
             datasourcesPrinter.printRecord(datasource.asList());
         }
         datasourcesPrinter.close(true);
-
-        return olsDatasources;
     }
-    private static Map<String,Datasource> getOntologiesFromOLS(String olsUrl) throws IOException {
-
-        final String olsOntologiesRequestUri = olsUrl + "api/ontologies?size=1000";
-
-        Map<String,Datasource> datasourceMap = new HashMap<>();
-
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()){
-            HttpGet httpGet = new HttpGet(olsOntologiesRequestUri);
-            httpClient.execute(httpGet, response ->  {
-                int status = response.getCode();
-                if (status >= 200 && status < 300) {
-                    HttpEntity entity = response.getEntity();
-                    if (entity == null) {
-                        return Optional.empty();
-                    } else {
-                        datasourceMap.putAll(mapToDatasources(EntityUtils.toString(entity)));
-                        return datasourceMap;
-                    }
-                } else {
-                    return datasourceMap;
-                }
+
+    // Adds a DATABASE datasource for each SSSOM file whose local_name prefix is not an OLS ontology, nor one of its
+    // alternative prefixes. Without them, the mappings of those files would reference a datasource prefix that is not
+    // in the datasources file. Only the YAML headers are read.
+    public static void addSSSOMFileDatasources(Map<String,Datasource> datasources, Collection<File> sssomFiles)
+            throws IOException {
+        DatasourceRegistry olsDatasources = DatasourceRegistry.of(datasources);
+        for (File sssomFile : sssomFiles) {
+            Object localName = Oxo1SSSOM2Neo.getYamlHeader(sssomFile).get("local_name");
+            if (localName == null || localName.toString().indexOf('.') < 0)
+                continue;
+            String prefix = localName.toString().substring(0, localName.toString().indexOf('.'));
+            if (olsDatasources.find(prefix) != null)
+                continue;
+            datasources.computeIfAbsent(prefix.toUpperCase(), key -> {
+                Datasource datasource = new Datasource(key, "DATABASE");
+                datasource.alternativePrefixes.add(prefix);
+                return datasource;
             });
-            return datasourceMap;
         }
     }
 
+    // One page of the api/ontologies response.
+    static class OntologiesPage {
+        final Map<String, Datasource> datasources;
+        final int totalPages;
 
-    private static Map<String,Datasource> mapToDatasources(String strResponse) {
-        Map<String, Datasource> datasources = new HashMap();
-        Gson gson = new Gson();
-        Map response = gson.fromJson(strResponse, Map.class);
-        if (response.containsKey("_embedded")) {
-            Map embedded = (Map)response.get("_embedded");
-            if (embedded.containsKey("ontologies")) {
-                Collection<Map<String, Object>> ontologies = (Collection<Map<String,Object>>)embedded.get("ontologies");
-                ontologies.forEach(o -> {
-                    Optional<Datasource> optionalDatasource = getDatasourceFromMap(o);
-                    if (optionalDatasource.isPresent())
-                        datasources.put(optionalDatasource.get().getPrefix(), optionalDatasource.get());
-                });
-                return datasources;
-            }
+        OntologiesPage(Map<String, Datasource> datasources, int totalPages) {
+            this.datasources = datasources;
+            this.totalPages = totalPages;
         }
-
-        return datasources;
     }
 
-    private static Optional<Datasource> getDatasourceFromMap(Map<String, Object> ontologyMap) {
-        if (ontologyMap.containsKey("config")) {
-            Map<String, Object> ontologyConfig = (Map<String, Object>) ontologyMap.get("config");
-
-            String prefix = (ontologyConfig.get("preferredPrefix") == null) ?
-                    (String)ontologyConfig.get("id") : (String)ontologyConfig.get("preferredPrefix");
-
-            String title = (ontologyConfig.get("title") != null) ?
-                    (String)ontologyConfig.get("title"):"";
-
-            String description = (ontologyConfig.get("description") != null) ?
-                    (String)ontologyConfig.get("description") : "";
-
-            String version = (ontologyConfig.get("version") != null) ?
-                    (String)ontologyConfig.get("version") : "";
+    // Decodes a page while reading it: only page.totalPages and _embedded.ontologies[].config are looked at, everything
+    // else, such as the ontologies' links and statistics, is skipped without being built.
+    static OntologiesPage readOntologiesPage(Reader responseReader) throws IOException {
+        try {
+            return readOntologiesPage(new JsonReader(responseReader));
+        } catch (IllegalStateException e) {
+            throw new IOException("Unexpected OLS ontologies response: " + e.getMessage(), e);
+        }
+    }
 
-            ArrayList<String> baseUris = (ArrayList<String>) ontologyConfig.getOrDefault("baseUris", null);
-            String baseUri = (baseUris == null || baseUris.isEmpty()) ? "" : baseUris.get(0);
+    private static OntologiesPage readOntologiesPage(JsonReader reader) throws IOException {
+        Map<String, Datasource> datasources = new HashMap<>();
+        int totalPages = 1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "page":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("totalPages") && reader.peek() == JsonToken.NUMBER)
+                            totalPages = reader.nextInt();
+                        else
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                case "_embedded":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("ontologies"))
+                            readOntologies(reader, datasources);
+                        else
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-            List<String> alternativePrefixesList = new LinkedList<>();
-            alternativePrefixesList.add((String)ontologyConfig.get("id"));
+        return new OntologiesPage(datasources, totalPages);
+    }
 
-            if (ontologyConfig.get("preferredPrefix") != null)
-                alternativePrefixesList.add((String)ontologyConfig.get("preferredPrefix"));
+    private static void readOntologies(JsonReader reader, Map<String, Datasource> datasources) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("config")) {
+                    Datasource datasource = readOntologyConfig(reader);
+                    if (datasource != null)
+                        datasources.put(datasource.getPrefix(), datasource);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
 
-            Datasource datasource = new Datasource(
-                    prefix,
-                    "",
-                    title,
-                    description,
-                    "ONTOLOGY",
-                    baseUri,
-                    alternativePrefixesList,
-                    "",
-                    version
-            );
-            return Optional.of(datasource);
+    private static Datasource readOntologyConfig(JsonReader reader) throws IOException {
+        String id = null;
+        String preferredPrefix = null;
+        String title = null;
+        String description = null;
+        String version = null;
+        String baseUri = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "preferredPrefix":
+                    preferredPrefix = nextStringOrNull(reader);
+                    break;
+                case "title":
+                    title = nextStringOrNull(reader);
+                    break;
+                case "description":
+                    description = nextStringOrNull(reader);
+                    break;
+                case "version":
+                    version = nextStringOrNull(reader);
+                    break;
+                case "baseUris":
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String uri = nextStringOrNull(reader);
+                        if (baseUri == null)
+                            baseUri = uri;
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
+        reader.endObject();
+
+        String prefix = (preferredPrefix == null) ? id : preferredPrefix;
+        if (prefix == null)
+            return null;
+
+        List<String> alternativePrefixesList = new ArrayList<>();
+        alternativePrefixesList.add(id);
+        if (preferredPrefix != null)
+            alternativePrefixesList.add(preferredPrefix);
+
+        return new Datasource(
+                prefix,
+                "",
+                title != null ? title : "",
+                description != null ? description : "",
+                "ONTOLOGY",
+                baseUri != null ? baseUri : "",
+                alternativePrefixesList,
+                "",
+                version != null ? version : ""
+        );
+    }
 
-        return Optional.empty();
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return null;
+        }
     }
 
     static class Datasource {
@@ -188,13 +285,7 @@ public class Datasources {
         }
 
         public String getAlternativePrefixesAsString() {
-            StringBuilder sbAlternativePrefixes = new StringBuilder(alternativePrefixes.get(0));
-            for (int i = 1; i < alternativePrefixes.size(); i++) {
-                sbAlternativePrefixes.append(",");
-                sbAlternativePrefixes.append(alternativePrefixes.get(i));
-            }
-
-            return sbAlternativePrefixes.toString();
+            return String.join(",", alternativePrefixes);
         }
 
         public String getLicense() {
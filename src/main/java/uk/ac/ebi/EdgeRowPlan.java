@@ -0,0 +1,139 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+// How to print the edges of one SSSOM file. Everything but the subject and object CURIEs is the same for every row
+// of a file, so those columns are worked out once from the MappingHeader columns of the output and the file's YAML
+// header, and kept already quoted for the output format. Printing a row then only quotes the two CURIEs.
+class EdgeRowPlan {
+
+	private static final int SUBJECT = 0;
+	private static final int OBJECT = 1;
+	private static final int CONSTANT = 2;
+
+	private final Oxo1SSSOM2Neo.MappingHeader[] headers;
+	private final int[] kinds;
+	private final String[] constants; // raw values, used when a constant has to go through the printer
+	private final String[] encodedConstants; // quoted values with the delimiter in front
+	private final String datasourcePrefix;
+	private final String source;
+
+	private EdgeRowPlan(Oxo1SSSOM2Neo.MappingHeader[] headers, int[] kinds, String[] constants,
+						String[] encodedConstants, String datasourcePrefix, String source) {
+		this.headers = headers;
+		this.kinds = kinds;
+		this.constants = constants;
+		this.encodedConstants = encodedConstants;
+		this.datasourcePrefix = datasourcePrefix;
+		this.source = source;
+	}
+
+	static EdgeRowPlan compile(Map<String, Object> yamlHeader, DatasourceRegistry datasources, String date,
+							   CSVFormat format, Gson gson) throws IOException {
+		return compile(yamlHeader, datasources, date, format, gson, Oxo1SSSOM2Neo.MappingHeader.values());
+	}
+
+	static EdgeRowPlan compile(Map<String, Object> yamlHeader, DatasourceRegistry datasources, String date,
+							   CSVFormat format, Gson gson, Oxo1SSSOM2Neo.MappingHeader[] headers) throws IOException {
+
+		String localName = (String)yamlHeader.get("local_name");
+		if (localName == null || localName.indexOf('.') < 0)
+			throw new IOException("SSSOM header has no local_name of the form <prefix>.<extension>");
+		String filePrefix = localName.substring(0, localName.indexOf('.'));
+		// an alternative prefix, in any case, stands for its datasource's preferred one
+		Datasources.Datasource fileDatasource = datasources.find(filePrefix);
+		String datasourcePrefix = fileDatasource != null ? fileDatasource.getPrefix() : filePrefix.toUpperCase();
+
+		int[] kinds = new int[headers.length];
+		String[] constants = new String[headers.length];
+		String[] encodedConstants = new String[headers.length];
+
+		for (int col = 0; col < headers.length; col++) {
+			switch (headers[col]) {
+				case FROM_CURIE:
+					kinds[col] = SUBJECT;
+					continue;
+				case TO_CURIE:
+					kinds[col] = OBJECT;
+					continue;
+				case DATASOURCE_PREFIX:
+					constants[col] = datasourcePrefix;
+					break;
+				case DATASOURCE:
+					constants[col] = gson.toJson(fileDatasource != null ? fileDatasource
+							: new Datasources.Datasource(filePrefix, "DATABASE"));
+					break;
+				case SOURCE_TYPE:
+					constants[col] = "ONTOLOGY";
+					break;
+				case SCOPE:
+					constants[col] = "RELATED";
+					break;
+				case DATE:
+					constants[col] = date;
+					break;
+			}
+			kinds[col] = CONSTANT;
+			encodedConstants[col] = format.getDelimiterString() + format.format(constants[col]);
+		}
+
+		Object mappingSetId = yamlHeader.get("mapping_set_id");
+		return new EdgeRowPlan(headers, kinds, constants, encodedConstants, datasourcePrefix,
+				mappingSetId != null ? mappingSetId.toString() : localName);
+	}
+
+	String getDatasourcePrefix() {
+		return datasourcePrefix;
+	}
+
+	// The value of a column that is the same for every row, or null if the plan has no such column.
+	String getConstant(Oxo1SSSOM2Neo.MappingHeader header) {
+		for (int col = 0; col < headers.length; col++)
+			if (headers[col] == header)
+				return constants[col];
+		return null;
+	}
+
+	// The mapping set the rows come from: its mapping_set_id, or its local_name.
+	String getSource() {
+		return source;
+	}
+
+	void print(CSVPrinter printer, String fromCurie, String toCurie) throws IOException {
+		printColumns(printer, fromCurie, toCurie);
+		printer.println();
+	}
+
+	// An aggregated mapping, with how many rows asserted it and the mapping sets they came from.
+	void print(CSVPrinter printer, String fromCurie, String toCurie, String count, String sources) throws IOException {
+		printColumns(printer, fromCurie, toCurie);
+		printer.print(count);
+		printer.print(sources);
+		printer.println();
+	}
+
+	private void printColumns(CSVPrinter printer, String fromCurie, String toCurie) throws IOException {
+		Appendable out = printer.getOut();
+		for (int col = 0; col < kinds.length; col++) {
+			switch (kinds[col]) {
+				case SUBJECT:
+					printer.print(fromCurie);
+					break;
+				case OBJECT:
+					printer.print(toCurie);
+					break;
+				default:
+					// the printer only knows where a record starts if it printed the first value itself
+					if (col == 0)
+						printer.print(constants[col]);
+					else
+						out.append(encodedConstants[col]);
+			}
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package uk.ac.ebi;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Where the terms and mappings of a conversion are written. The methods are only called by the thread merging the
+// SSSOM files, every term exactly once.
+public interface GraphOutput extends Closeable {
+
+	void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException;
+
+	void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException;
+
+	// A mapping asserted by count rows of the given mapping sets, separated by semicolons. Only called on outputs
+	// created for aggregated mappings, instead of writeMapping.
+	void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException;
+}
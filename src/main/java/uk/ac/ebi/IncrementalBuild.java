@@ -0,0 +1,329 @@
+package uk.ac.ebi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+// Incremental rebuilds. A manifest in the manifest directory lists the SSSOM files of the last run with their size,
+// modification time and SHA-256, and points to what each file contributed: its nodes in the order they were first
+// seen in the file, and its edges. A file that has not changed is replayed from its contribution instead of being
+// parsed again. At the end of the run, the contributions of the changed files are compared with the previous ones
+// to write delta CSVs that can be applied to the live graph instead of reloading it.
+class IncrementalBuild {
+
+	static final CSVFormat CONTRIBUTION_FORMAT = CSVFormat.TDF;
+	static final String NODE_ID = "subject_id";
+	static final String NODE_LABEL = "subject_label";
+	static final String EDGE_FROM = "subject_id";
+	static final String EDGE_TO = "object_id";
+
+	private static final String MANIFEST = "manifest.json";
+	private static final String CONTRIBUTIONS = "contributions";
+	private static final int MANIFEST_VERSION = 1;
+
+	private final Path manifestDir;
+	private final Path contributionsDir;
+	private final Path deltaDir;
+	private final String filters;
+	private final Oxo1SSSOM2Neo.MappingHeader[] mappingColumns;
+	private final Manifest previous;
+	private final Map<String, Entry> previousByPath = new HashMap<>();
+	private final List<IncrementalFileTask> tasks = new ArrayList<>();
+
+	private IncrementalBuild(Path manifestDir, Path deltaDir, String filters,
+							 Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, Manifest previous) {
+		this.manifestDir = manifestDir;
+		this.contributionsDir = manifestDir.resolve(CONTRIBUTIONS);
+		this.deltaDir = deltaDir;
+		this.filters = filters;
+		this.mappingColumns = mappingColumns;
+		this.previous = previous;
+		for (Entry entry : previous.files)
+			previousByPath.put(entry.path, entry);
+	}
+
+	static IncrementalBuild open(Path manifestDir, Path deltaDir, ConversionOptions conversionOptions)
+			throws IOException {
+		Files.createDirectories(manifestDir.resolve(CONTRIBUTIONS));
+		Files.createDirectories(deltaDir);
+
+		Manifest previous = new Manifest();
+		Path manifestPath = manifestDir.resolve(MANIFEST);
+		if (Files.exists(manifestPath)) {
+			try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+				previous = new Gson().fromJson(reader, Manifest.class);
+			}
+			if (previous.version != MANIFEST_VERSION)
+				throw new IOException(manifestPath + " has version " + previous.version + ", expected "
+						+ MANIFEST_VERSION);
+		}
+		return new IncrementalBuild(manifestDir, deltaDir, filters(conversionOptions),
+				conversionOptions.getMappingColumns(), previous);
+	}
+
+	// Contributions depend on the row filters, so they can only be reused by runs with the same filters.
+	private static String filters(ConversionOptions conversionOptions) {
+		return "include-prefixes=" + conversionOptions.getIncludedPrefixes()
+				+ " min-confidence=" + conversionOptions.getMinConfidence();
+	}
+
+	MappingBatchTask taskFor(File sssomFile, SSSOMProjection projection,
+							 DatasourceRegistry datasources, String date) {
+		Entry previousEntry = previousByPath.get(sssomFile.getAbsolutePath());
+		if (previousEntry != null && !previous.filters.equals(filters))
+			previousEntry = previousEntry.withoutReuse();
+		IncrementalFileTask task = new IncrementalFileTask(sssomFile, projection, datasources, date, mappingColumns,
+				previousEntry, contributionsDir, Integer.toHexString(filters.hashCode()));
+		tasks.add(task);
+		return task;
+	}
+
+	// Writes the delta files and the new manifest. Called once every task has been consumed.
+	void finish(DatasourceRegistry datasources, String date) throws IOException {
+		List<Entry> current = new ArrayList<>();
+		int reused = 0;
+		for (IncrementalFileTask task : tasks) {
+			current.add(task.getEntry());
+			if (task.isReplayed())
+				reused++;
+		}
+		System.out.println("incremental build: reused " + reused + " of " + tasks.size() + " files");
+
+		Map<String, Entry> currentByPath = new LinkedHashMap<>();
+		for (Entry entry : current)
+			currentByPath.put(entry.path, entry);
+
+		List<Entry[]> changes = new ArrayList<>(); // pairs of previous and current entry, either may be null
+		for (Entry entry : current) {
+			Entry previousEntry = previousByPath.get(entry.path);
+			if (previousEntry == null || !previousEntry.sha256.equals(entry.sha256))
+				changes.add(new Entry[] { previousEntry, entry });
+		}
+		for (Entry previousEntry : previous.files)
+			if (!currentByPath.containsKey(previousEntry.path))
+				changes.add(new Entry[] { previousEntry, null });
+
+		writeMappingDeltas(changes, datasources, date);
+		writeTermDeltas(changes, current, datasources);
+
+		Manifest manifest = new Manifest();
+		manifest.filters = filters;
+		manifest.files = current;
+		Path manifestPath = manifestDir.resolve(MANIFEST);
+		Path temporary = manifestDir.resolve(MANIFEST + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(manifest, writer);
+		}
+		Files.move(temporary, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		deleteUnusedContributions(current);
+	}
+
+	private void writeMappingDeltas(List<Entry[]> changes, DatasourceRegistry datasources,
+									String date) throws IOException {
+		try (CSVPrinter added = printer("mappings-added.csv",
+				Oxo1SSSOM2Neo.MappingHeader.asSetOfString(mappingColumns));
+			 CSVPrinter removed = printer("mappings-removed.csv", List.of(
+					 Oxo1SSSOM2Neo.MappingHeader.FROM_CURIE.getValue(),
+					 Oxo1SSSOM2Neo.MappingHeader.TO_CURIE.getValue(),
+					 Oxo1SSSOM2Neo.MappingHeader.DATASOURCE_PREFIX.getValue()))) {
+
+			for (Entry[] change : changes) {
+				Entry before = change[0];
+				Entry after = change[1];
+
+				// edges are matched on their curies; rows with the same curies are repeated edges, so count them
+				Map<String, Integer> removedEdges = new LinkedHashMap<>();
+				if (before != null)
+					forEachEdge(before, (from, to) -> removedEdges.merge(from + '\t' + to, 1, Integer::sum));
+
+				if (after != null) {
+					EdgeRowPlan plan = EdgeRowPlan.compile(after.yamlHeader(), datasources, date,
+							Oxo1SSSOM2Neo.CSV_FORMAT, new Gson(), mappingColumns);
+					boolean samePrefix = before != null
+							&& Objects.equals(before.datasourcePrefix(datasources), plan.getDatasourcePrefix());
+					forEachEdge(after, (from, to) -> {
+						String key = from + '\t' + to;
+						Integer count = samePrefix ? removedEdges.get(key) : null;
+						if (count == null) {
+							plan.print(added, from, to);
+						} else if (count > 1) {
+							removedEdges.put(key, count - 1);
+						} else {
+							removedEdges.remove(key);
+						}
+					});
+				}
+
+				for (Map.Entry<String, Integer> edge : removedEdges.entrySet()) {
+					String[] curies = edge.getKey().split("\t", 2);
+					for (int i = 0; i < edge.getValue(); i++)
+						removed.printRecord(curies[0], curies[1], before.datasourcePrefix(datasources));
+				}
+			}
+		}
+	}
+
+	private void writeTermDeltas(List<Entry[]> changes, List<Entry> current, DatasourceRegistry datasources)
+			throws IOException {
+		Set<String> candidates = new HashSet<>();
+		for (Entry[] change : changes)
+			for (Entry entry : change)
+				if (entry != null)
+					forEachNode(entry, (nodeId, nodeLabel) -> candidates.add(nodeId));
+
+		Map<String, List<String>> before = replayTerms(previous.files, candidates, datasources);
+		Map<String, List<String>> after = replayTerms(current, candidates, datasources);
+
+		try (CSVPrinter added = printer("terms-added.csv", Oxo1SSSOM2Neo.TermHeader.asListOfString());
+			 CSVPrinter removed = printer("terms-removed.csv", List.of("curie"))) {
+			for (Map.Entry<String, List<String>> term : after.entrySet())
+				if (!term.getValue().equals(before.get(term.getKey())))
+					added.printRecord(term.getValue());
+			for (String nodeId : before.keySet())
+				if (!after.containsKey(nodeId))
+					removed.printRecord(nodeId);
+		}
+	}
+
+	// Works out the term rows a full run over these entries would print for the candidate nodes, following the
+	// rules of Oxo1SSSOM2Neo.addNode: the first time a node is seen decides its label.
+	private Map<String, List<String>> replayTerms(List<Entry> entries, Set<String> candidates,
+												  DatasourceRegistry datasources) throws IOException {
+		Map<String, List<String>> terms = new LinkedHashMap<>();
+		Set<String> pending = new HashSet<>();
+		PrefixResolver prefixes = new PrefixResolver(datasources);
+		for (Entry entry : entries) {
+			prefixes.addCurieMap(entry.curieMap);
+			forEachNode(entry, (nodeId, nodeLabel) -> {
+				if (!candidates.contains(nodeId) || terms.containsKey(nodeId) || pending.contains(nodeId))
+					return;
+				if (nodeLabel == null || nodeLabel.isEmpty())
+					pending.add(nodeId);
+				else
+					terms.put(nodeId, Oxo1SSSOM2Neo.termRow(nodeId, nodeLabel, prefixes));
+			});
+		}
+		for (String nodeId : pending)
+			terms.put(nodeId, Oxo1SSSOM2Neo.termRow(nodeId, nodeId, prefixes));
+		return terms;
+	}
+
+	private CSVPrinter printer(String name, Iterable<String> header) throws IOException {
+		List<String> columns = new ArrayList<>();
+		header.forEach(columns::add);
+		return Oxo1SSSOM2Neo.CSV_FORMAT.withHeader(columns.toArray(new String[0])).print(
+				new OutputStreamWriter(CompressedFiles.openOutput(deltaDir.resolve(name), 1), StandardCharsets.UTF_8));
+	}
+
+	private void forEachNode(Entry entry, CurieConsumer consumer) throws IOException {
+		forEachRow(contributionsDir.resolve(entry.nodesFile), NODE_ID, NODE_LABEL, consumer);
+	}
+
+	private void forEachEdge(Entry entry, CurieConsumer consumer) throws IOException {
+		forEachRow(contributionsDir.resolve(entry.edgesFile), EDGE_FROM, EDGE_TO, consumer);
+	}
+
+	private static void forEachRow(Path contribution, String firstColumn, String secondColumn,
+								   CurieConsumer consumer) throws IOException {
+		try (SSSOMReader reader = new SSSOMReader(contribution.toFile())) {
+			int first = reader.getColumnIndex(firstColumn);
+			int second = reader.getColumnIndex(secondColumn);
+			while (reader.next())
+				consumer.accept(reader.get(first), reader.get(second));
+		}
+	}
+
+	private void deleteUnusedContributions(List<Entry> current) throws IOException {
+		Set<String> used = new HashSet<>();
+		for (Entry entry : current) {
+			used.add(entry.nodesFile);
+			used.add(entry.edgesFile);
+		}
+		try (var contributions = Files.list(contributionsDir)) {
+			for (Path contribution : (Iterable<Path>)contributions::iterator)
+				if (!used.contains(contribution.getFileName().toString()))
+					Files.delete(contribution);
+		}
+	}
+
+	interface CurieConsumer {
+		void accept(String first, String second) throws IOException;
+	}
+
+	static class Manifest {
+		int version = MANIFEST_VERSION;
+		String filters = "";
+		List<Entry> files = new ArrayList<>();
+	}
+
+	static class Entry {
+		String path;
+		long size;
+		long lastModified;
+		String sha256;
+		Map<String, String> curieMap;
+		String localName;
+		String datasourcePrefix; // the one its mappings were written with
+		String nodesFile;
+		String edgesFile;
+		long nodeCount;
+		long edgeCount;
+		transient boolean reusable = true;
+
+		Map<String, Object> yamlHeader() {
+			Map<String, Object> yamlHeader = new HashMap<>();
+			yamlHeader.put("curie_map", curieMap);
+			yamlHeader.put("local_name", localName);
+			return yamlHeader;
+		}
+
+		// Manifests written before it was recorded only have the local_name, which is resolved as EdgeRowPlan does.
+		String datasourcePrefix(DatasourceRegistry datasources) {
+			if (datasourcePrefix != null)
+				return datasourcePrefix;
+			if (localName == null || localName.indexOf('.') < 0)
+				return null;
+			String filePrefix = localName.substring(0, localName.indexOf('.'));
+			Datasources.Datasource fileDatasource = datasources.find(filePrefix);
+			return fileDatasource != null ? fileDatasource.getPrefix() : filePrefix.toUpperCase();
+		}
+
+		// A copy that is still the previous state of the file, but must not be replayed.
+		Entry withoutReuse() {
+			Entry copy = new Entry();
+			copy.path = path;
+			copy.size = size;
+			copy.lastModified = lastModified;
+			copy.sha256 = sha256;
+			copy.curieMap = curieMap;
+			copy.localName = localName;
+			copy.datasourcePrefix = datasourcePrefix;
+			copy.nodesFile = nodesFile;
+			copy.edgesFile = edgesFile;
+			copy.nodeCount = nodeCount;
+			copy.edgeCount = edgeCount;
+			copy.reusable = false;
+			return copy;
+		}
+	}
+}
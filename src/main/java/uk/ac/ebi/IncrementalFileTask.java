@@ -0,0 +1,203 @@
+package uk.ac.ebi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.google.gson.Gson;
+import org.apache.commons.csv.CSVPrinter;
+
+// An SSSOM file of an incremental build. If the file has the size and modification time recorded in the manifest,
+// its batches are replayed from its previous contribution. Otherwise it is parsed as usual, while the batches are
+// recorded as the file's new contribution and the file's SHA-256 is computed from the bytes being parsed.
+class IncrementalFileTask extends SSSOMFileTask {
+
+	private final IncrementalBuild.Entry previousEntry;
+	private final Path contributionsDir;
+	private final String filtersId;
+
+	private volatile IncrementalBuild.Entry entry;
+	private volatile boolean replayed;
+
+	private DigestInputStream rawInput;
+	private Path nodesTemporary;
+	private Path edgesTemporary;
+	private CSVPrinter nodesOut;
+	private CSVPrinter edgesOut;
+	private Map<String, Object> yamlHeader;
+	private String datasourcePrefix;
+	private long nodeCount;
+	private long edgeCount;
+
+	IncrementalFileTask(File sssomFile, SSSOMProjection projection, DatasourceRegistry datasources,
+						String date, Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, IncrementalBuild.Entry previousEntry,
+						Path contributionsDir, String filtersId) {
+		// the contribution must not depend on other files, so only nodes seen earlier in this file are skipped
+		super(sssomFile, projection, datasources, date, mappingColumns, localDedup());
+		this.previousEntry = previousEntry;
+		this.contributionsDir = contributionsDir;
+		this.filtersId = filtersId;
+	}
+
+	private static Predicate<String> localDedup() {
+		Set<String> seen = new HashSet<>();
+		return nodeId -> !seen.add(nodeId);
+	}
+
+	// Only valid once the last batch has been taken.
+	IncrementalBuild.Entry getEntry() {
+		return entry;
+	}
+
+	boolean isReplayed() {
+		return replayed;
+	}
+
+	@Override
+	protected void readBatches() throws IOException, InterruptedException {
+		if (previousEntry != null && previousEntry.reusable
+				&& previousEntry.size == sssomFile.length()
+				&& previousEntry.lastModified == sssomFile.lastModified()
+				&& Files.exists(contributionsDir.resolve(previousEntry.nodesFile))
+				&& Files.exists(contributionsDir.resolve(previousEntry.edgesFile))) {
+			replay();
+			return;
+		}
+
+		String temporaryName = "tmp-" + Thread.currentThread().getId() + "-" + System.nanoTime();
+		nodesTemporary = contributionsDir.resolve(temporaryName + ".nodes.tsv.gz");
+		edgesTemporary = contributionsDir.resolve(temporaryName + ".edges.tsv.gz");
+		nodesOut = contributionPrinter(nodesTemporary, IncrementalBuild.NODE_ID, IncrementalBuild.NODE_LABEL);
+		edgesOut = contributionPrinter(edgesTemporary, IncrementalBuild.EDGE_FROM, IncrementalBuild.EDGE_TO);
+		try {
+			super.readBatches();
+		} finally {
+			nodesOut.close();
+			edgesOut.close();
+			Files.deleteIfExists(nodesTemporary);
+			Files.deleteIfExists(edgesTemporary);
+		}
+	}
+
+	@Override
+	protected SSSOMReader openReader() throws IOException {
+		rawInput = SSSOMSnapshot.digestInput(sssomFile);
+		return new SSSOMReader(CompressedFiles.openChannel(rawInput, sssomFile.getName()), projection);
+	}
+
+	@Override
+	protected void put(MappingBatch batch) throws InterruptedException {
+		if (nodesOut != null && batch.failure == null) {
+			try {
+				record(batch);
+			} catch (IOException e) {
+				batch = new MappingBatch();
+				batch.failure = e;
+			}
+		}
+		super.put(batch);
+	}
+
+	private void record(MappingBatch batch) throws IOException {
+		if (batch.yamlHeader != null)
+			yamlHeader = batch.yamlHeader;
+		if (batch.rowPlan != null)
+			datasourcePrefix = batch.rowPlan.getDatasourcePrefix();
+		for (int i = 0; i < batch.nodeCount; i++)
+			nodesOut.printRecord(batch.nodeIds[i], batch.nodeLabels[i]);
+		for (int i = 0; i < batch.edgeCount; i++)
+			edgesOut.printRecord(batch.edgeFromIds[i], batch.edgeToIds[i]);
+		nodeCount += batch.nodeCount;
+		edgeCount += batch.edgeCount;
+
+		if (batch.last)
+			finishContribution();
+	}
+
+	// Runs before the last batch is queued, so the entry is ready by the time the file has been written.
+	private void finishContribution() throws IOException {
+		rawInput.transferTo(OutputStream.nullOutputStream()); // anything the decompressor did not need still counts
+		nodesOut.close();
+		edgesOut.close();
+
+		String sha256 = SSSOMSnapshot.hex(rawInput.getMessageDigest().digest());
+
+		IncrementalBuild.Entry newEntry = new IncrementalBuild.Entry();
+		newEntry.path = sssomFile.getAbsolutePath();
+		newEntry.size = sssomFile.length();
+		newEntry.lastModified = sssomFile.lastModified();
+		newEntry.sha256 = sha256;
+		newEntry.curieMap = curieMap(yamlHeader);
+		newEntry.localName = yamlHeader == null ? null : (String)yamlHeader.get("local_name");
+		newEntry.datasourcePrefix = datasourcePrefix;
+		newEntry.nodesFile = sha256 + "-" + filtersId + ".nodes.tsv.gz";
+		newEntry.edgesFile = sha256 + "-" + filtersId + ".edges.tsv.gz";
+		newEntry.nodeCount = nodeCount;
+		newEntry.edgeCount = edgeCount;
+
+		Files.move(nodesTemporary, contributionsDir.resolve(newEntry.nodesFile), StandardCopyOption.REPLACE_EXISTING);
+		Files.move(edgesTemporary, contributionsDir.resolve(newEntry.edgesFile), StandardCopyOption.REPLACE_EXISTING);
+		entry = newEntry;
+	}
+
+	private void replay() throws IOException, InterruptedException {
+		replayed = true;
+		Map<String, Object> yamlHeader = previousEntry.yamlHeader();
+		EdgeRowPlan rowPlan = EdgeRowPlan.compile(yamlHeader, datasources, date, Oxo1SSSOM2Neo.CSV_FORMAT, new Gson(),
+				mappingColumns);
+
+		MappingBatch batch = new MappingBatch();
+		batch.yamlHeader = yamlHeader;
+		batch.rowPlan = rowPlan;
+		batch = replayRows(contributionsDir.resolve(previousEntry.nodesFile), true, batch, rowPlan);
+		batch = replayRows(contributionsDir.resolve(previousEntry.edgesFile), false, batch, rowPlan);
+
+		entry = previousEntry;
+		batch.last = true;
+		put(batch);
+	}
+
+	// Queues the rows of a contribution file, returning the batch that is not full yet.
+	private MappingBatch replayRows(Path contribution, boolean nodes, MappingBatch batch, EdgeRowPlan rowPlan)
+			throws IOException, InterruptedException {
+		try (SSSOMReader reader = new SSSOMReader(contribution.toFile())) {
+			while (reader.next()) {
+				if (nodes)
+					batch.addNode(reader.get(0), reader.get(1));
+				else
+					batch.addEdge(reader.get(0), reader.get(1));
+				if (batch.isFull()) {
+					put(batch);
+					batch = new MappingBatch();
+					batch.rowPlan = rowPlan;
+				}
+			}
+		}
+		return batch;
+	}
+
+	private static CSVPrinter contributionPrinter(Path path, String... header) throws IOException {
+		return IncrementalBuild.CONTRIBUTION_FORMAT.withHeader(header).print(
+				new OutputStreamWriter(CompressedFiles.openOutput(path, 1), StandardCharsets.UTF_8));
+	}
+
+	private static Map<String, String> curieMap(Map<String, Object> yamlHeader) {
+		if (yamlHeader == null || !(yamlHeader.get("curie_map") instanceof Map))
+			return null;
+		Map<String, String> curieMap = new LinkedHashMap<>();
+		((Map<?, ?>)yamlHeader.get("curie_map")).forEach((prefix, uri) ->
+				curieMap.put(String.valueOf(prefix), String.valueOf(uri)));
+		return curieMap;
+	}
+}
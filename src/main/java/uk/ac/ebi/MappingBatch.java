@@ -0,0 +1,41 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.util.Map;
+
+// A chunk of one SSSOM file, handed from the thread reading the file to the thread writing the outputs.
+class MappingBatch {
+
+	static final int SIZE = 4096;
+
+	final String[] edgeFromIds = new String[SIZE];
+	final String[] edgeToIds = new String[SIZE];
+	int edgeCount;
+	EdgeRowPlan rowPlan;
+
+	// candidate nodes in the order they appear in the file, subject before object
+	final String[] nodeIds = new String[2 * SIZE];
+	final String[] nodeLabels = new String[2 * SIZE];
+	int nodeCount;
+	int knownNodes; // candidate nodes not queued because the writer had them already
+
+	Map<String, Object> yamlHeader; // only set on the first batch of a file
+	boolean last;
+	IOException failure;
+
+	boolean isFull() {
+		return edgeCount == SIZE || nodeCount == 2 * SIZE;
+	}
+
+	void addEdge(String fromId, String toId) {
+		edgeFromIds[edgeCount] = fromId;
+		edgeToIds[edgeCount] = toId;
+		edgeCount++;
+	}
+
+	void addNode(String nodeId, String nodeLabel) {
+		nodeIds[nodeCount] = nodeId;
+		nodeLabels[nodeCount] = nodeLabel;
+		nodeCount++;
+	}
+}
@@ -0,0 +1,64 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Produces the batches of one input file on a worker thread. The batches are consumed in file order by the thread
+// writing the outputs, so the outputs do not depend on how many files are read at the same time.
+abstract class MappingBatchTask implements Runnable {
+
+	private static final int QUEUE_CAPACITY = 8;
+
+	private final BlockingQueue<MappingBatch> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+	private long startNanos;
+	private volatile long readNanos;
+
+	// Queues the batches of the file, the last one with MappingBatch.last set.
+	protected abstract void readBatches() throws IOException, InterruptedException;
+
+	// What is being read, for error messages.
+	protected abstract String describe();
+
+	protected void put(MappingBatch batch) throws InterruptedException {
+		if (batch.last)
+			readNanos = System.nanoTime() - startNanos;
+		batches.put(batch);
+	}
+
+	// Time from starting to read the file to queueing its last batch, once that batch has been taken.
+	long getReadNanos() {
+		return readNanos;
+	}
+
+	MappingBatch take() throws IOException {
+		try {
+			MappingBatch batch = batches.take();
+			if (batch.failure != null)
+				throw new IOException("Failed to read " + describe(), batch.failure);
+			return batch;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading " + describe());
+		}
+	}
+
+	@Override
+	public void run() {
+		startNanos = System.nanoTime();
+		try {
+			try {
+				readBatches();
+			} catch (IOException | RuntimeException e) {
+				MappingBatch failed = new MappingBatch();
+				failed.failure = e instanceof IOException ? (IOException)e : new IOException(e);
+				batches.put(failed);
+			}
+		} catch (InterruptedException e) {
+			// the outputs are being abandoned, nobody is waiting for the rest of this file
+			Thread.currentThread().interrupt();
+		}
+	}
+}
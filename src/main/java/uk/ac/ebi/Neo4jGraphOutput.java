@@ -0,0 +1,438 @@
+package uk.ac.ebi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.GraphDatabase;
+import org.neo4j.driver.v1.Logging;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.summary.SummaryCounters;
+
+// Also loads the terms and mappings into a running Neo4j over Bolt, building the same graph as OxoNeo4jLoader.py does
+// from the CSV outputs: Datasource and Term nodes, HAS_SOURCE from every term to the datasource of its prefix, and
+// MAPPING between terms. The rows are sent as parameters of UNWIND statements, batchSize rows each, on parallelism
+// sessions at a time. Every batch is a transaction of its own, which the driver retries on transient errors, such as
+// the deadlocks of batches creating relationships to the same datasource.
+//
+// The datasources are loaded when the output is opened, after wiping the graph if asked to. Terms are sent as they
+// are written. Like the loader, which only creates a term once it has matched the datasource of the term's prefix, terms
+// whose prefix is not one of a datasource's, in any case, are left out, together with the mappings from or to them.
+// Mappings can only be created once both of their terms exist, and the last terms only come when the output is closed,
+// so the mappings are spilled to a file in the spill directory and loaded from it then.
+class Neo4jGraphOutput implements GraphOutput {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long MAX_RETRY_MINUTES = 5;
+
+	// the unique label and property pairs
+	private static final String[][] CONSTRAINTS = { { "Term", "curie" }, { "Datasource", "prefix" } };
+	private static final String[] WIPES = {
+			"MATCH ()-[r:MAPPING]->() WITH r LIMIT $limit DELETE r RETURN count(*)",
+			"MATCH ()-[r:HAS_SOURCE]->() WITH r LIMIT $limit DELETE r RETURN count(*)",
+			"MATCH (t:Term) WITH t LIMIT $limit DETACH DELETE t RETURN count(*)",
+			"MATCH (d:Datasource) WITH d LIMIT $limit DETACH DELETE d RETURN count(*)" };
+	private static final String LOAD_DATASOURCES = "UNWIND $rows AS row"
+			+ " MERGE (d:Datasource {prefix: row.prefix})"
+			+ " SET d.preferredPrefix = row.prefix, d.name = row.name, d.description = row.description,"
+			+ " d.versionInfo = row.versionInfo, d.idorgNamespace = row.idorgNamespace, d.sourceType = row.sourceType,"
+			+ " d.alternatePrefix = row.alternatePrefix";
+	private static final String LOAD_TERMS = "UNWIND $rows AS row"
+			+ " MATCH (d:Datasource {prefix: row.prefix})"
+			+ " MERGE (t:Term {curie: row.curie})"
+			+ " SET t.id = row.id, t.label = row.label, t.uri = row.uri"
+			+ " CREATE (t)-[:HAS_SOURCE]->(d)";
+	// the columns that are the same for every mapping of a file come once per batch, in $plans
+	private static final String LOAD_MAPPINGS = "UNWIND $rows AS row"
+			+ " WITH row, $plans[row.plan] AS plan"
+			+ " MATCH (f:Term {curie: row.from}), (t:Term {curie: row.to})"
+			+ " CREATE (f)-[:MAPPING {sourcePrefix: plan.sourcePrefix, datasource: plan.datasource,"
+			+ " sourceType: plan.sourceType, scope: plan.scope, date: plan.date, count: row.count,"
+			+ " sources: row.sources}]->(t)";
+
+	private final GraphOutput output;
+	private final Driver driver;
+	private final DatasourceRegistry datasources;
+	private final int batchSize;
+	private final ExecutorService loaders;
+	private final int permits;
+	private final Semaphore inFlight;
+
+	private final List<EdgeRowPlan> rowPlans = new ArrayList<>();
+	private final Map<EdgeRowPlan, Integer> rowPlanIds = new IdentityHashMap<>();
+	private final Path spillFile;
+	private final DataOutputStream spill;
+
+	private List<Map<String, Object>> terms;
+	private long loadedTerms;
+	private long skippedTerms;
+	private long mappings;
+	private long skippedMappings;
+	private final LongAdder nodesCreated = new LongAdder();
+	private final LongAdder relationshipsCreated = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private volatile IOException failure;
+
+	Neo4jGraphOutput(GraphOutput output, Driver driver, DatasourceRegistry datasources, Path spillDir, int batchSize,
+					 int parallelism, boolean wipe, int wipeBatchSize) throws IOException {
+		this.output = output;
+		this.driver = driver;
+		this.datasources = datasources;
+		this.batchSize = batchSize;
+		permits = 2 * parallelism;
+		inFlight = new Semaphore(permits);
+		terms = new ArrayList<>(batchSize);
+
+		try {
+			if (wipe)
+				wipe(wipeBatchSize);
+			// Neo4j 4.x fails on creating a constraint that is already there, where 3.x does nothing
+			List<String> existing = existingConstraints();
+			for (String[] constraint : CONSTRAINTS)
+				if (!hasConstraint(existing, constraint))
+					run("CREATE " + constraint(constraint), Map.of());
+			loadDatasources();
+		} catch (RuntimeException e) {
+			driver.close();
+			throw new IOException("Failed to prepare Neo4j for loading", e);
+		}
+
+		Files.createDirectories(spillDir);
+		spillFile = Files.createTempFile(spillDir, "oxo-neo4j-mappings-", ".bin");
+		spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), BUFFER_SIZE));
+		loaders = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "neo4j-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// A driver for the Neo4j of the [Basics] section of an OxO config.ini, with neoURL, neoUser and neoPass as read
+	// by OxoNeo4jLoader.py.
+	static Driver connect(Path configFile, int parallelism, boolean encrypted) throws IOException {
+		Map<String, String> basics = readIniSection(configFile, "Basics");
+		String uri = basics.get("neoURL");
+		if (uri == null || uri.isEmpty())
+			throw new IOException(configFile + " has no neoURL in its [Basics] section");
+		Config.ConfigBuilder config = Config.build()
+				.withMaxConnectionPoolSize(parallelism + 1)
+				.withMaxTransactionRetryTime(MAX_RETRY_MINUTES, TimeUnit.MINUTES)
+				.withLogging(Logging.javaUtilLogging(Level.WARNING));
+		if (!encrypted)
+			config.withoutEncryption();
+		return GraphDatabase.driver(uri, AuthTokens.basic(basics.getOrDefault("neoUser", ""),
+				basics.getOrDefault("neoPass", "")), config.toConfig());
+	}
+
+	// The key=value (or key: value) pairs of one section of an INI file, as Python's ConfigParser reads them.
+	private static Map<String, String> readIniSection(Path iniFile, String section) throws IOException {
+		Map<String, String> values = new HashMap<>();
+		String current = null;
+		try (BufferedReader reader = Files.newBufferedReader(iniFile, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#") || line.startsWith(";"))
+					continue;
+				if (line.startsWith("[") && line.endsWith("]")) {
+					current = line.substring(1, line.length() - 1).trim();
+					continue;
+				}
+				int separator = line.indexOf('=');
+				int colon = line.indexOf(':');
+				if (separator < 0 || (colon >= 0 && colon < separator))
+					separator = colon;
+				if (section.equals(current) && separator > 0)
+					values.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+			}
+		}
+		return values;
+	}
+
+	// Drops the constraints, so their indexes are not kept up to date while deleting, and deletes what the loader
+	// creates in batches, relationships first so no batch has to detach many of them at once. The constraints are
+	// created again afterwards, before loading. Like OxoNeo4jLoader.py -W, this deletes the graph, it does not drop
+	// the database, so it takes time in proportion to the size of the graph.
+	private void wipe(int wipeBatchSize) {
+		long start = System.nanoTime();
+		List<String> existing = existingConstraints();
+		for (String[] constraint : CONSTRAINTS)
+			if (hasConstraint(existing, constraint))
+				run("DROP " + constraint(constraint), Map.of());
+		long deleted = 0;
+		for (String wipe : WIPES) {
+			long batch;
+			do {
+				try (Session session = driver.session()) {
+					batch = session.writeTransaction(tx -> tx.run(wipe, Map.of("limit", wipeBatchSize)).single().get(0)
+							.asLong());
+				}
+				deleted += batch;
+			} while (batch > 0);
+		}
+		System.out.println("neo4j: wiped " + deleted + " nodes and relationships in "
+				+ (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+
+	// The descriptions of the constraints, such as CONSTRAINT ON ( term:Term ) ASSERT term.curie IS UNIQUE.
+	private List<String> existingConstraints() {
+		try (Session session = driver.session()) {
+			return session.run("CALL db.constraints()").list(record -> record.get("description").asString());
+		}
+	}
+
+	private static boolean hasConstraint(List<String> existing, String[] constraint) {
+		return existing.stream().anyMatch(description -> description.contains(":" + constraint[0] + " ")
+				&& description.contains("." + constraint[1]));
+	}
+
+	// In the syntax of Neo4j 3.x, which 4.x still takes.
+	private static String constraint(String[] constraint) {
+		return "CONSTRAINT ON (i:" + constraint[0] + ") ASSERT i." + constraint[1] + " IS UNIQUE";
+	}
+
+	private void loadDatasources() {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (Datasources.Datasource datasource : datasources.getDatasources()) {
+			Map<String, Object> row = new HashMap<>();
+			row.put("prefix", datasource.getPrefix());
+			row.put("name", datasource.getTitle());
+			row.put("description", datasource.getDescription());
+			row.put("versionInfo", datasource.getVersionInfo());
+			row.put("idorgNamespace", datasource.getIdorgNamespace());
+			row.put("sourceType", datasource.getSourceType());
+			row.put("alternatePrefix", new ArrayList<>(datasource.alternativePrefixes));
+			rows.add(row);
+		}
+		run(LOAD_DATASOURCES, Map.of("rows", rows));
+	}
+
+	@Override
+	public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException {
+		output.writeTerm(nodeId, nodeLabel, prefixes);
+		Datasources.Datasource datasource = datasources.find(nodeId, nodeId.indexOf(':'));
+		if (datasource == null) {
+			skippedTerms++;
+			return;
+		}
+		List<String> row = Oxo1SSSOM2Neo.termRow(nodeId, nodeLabel, prefixes);
+		Map<String, Object> term = new HashMap<>();
+		term.put("curie", nodeId);
+		term.put("id", row.get(Oxo1SSSOM2Neo.TermHeader.IDENTIFIER.ordinal()));
+		term.put("label", nodeLabel);
+		term.put("uri", row.get(Oxo1SSSOM2Neo.TermHeader.URI.ordinal()));
+		term.put("prefix", datasource.getPrefix());
+		terms.add(term);
+		loadedTerms++;
+		if (terms.size() == batchSize)
+			submitTerms();
+	}
+
+	@Override
+	public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException {
+		output.writeMapping(rowPlan, fromId, toId);
+		spillMapping(rowPlan, fromId, toId, -1, null);
+	}
+
+	@Override
+	public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		output.writeAggregatedMapping(rowPlan, fromId, toId, count, sources);
+		spillMapping(rowPlan, fromId, toId, count, sources);
+	}
+
+	private void spillMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		if (!hasDatasource(fromId) || !hasDatasource(toId)) {
+			skippedMappings++;
+			return;
+		}
+		Integer rowPlanId = rowPlanIds.get(rowPlan);
+		if (rowPlanId == null) {
+			rowPlanId = rowPlans.size();
+			rowPlans.add(rowPlan);
+			rowPlanIds.put(rowPlan, rowPlanId);
+		}
+		spill.writeInt(rowPlanId);
+		writeString(spill, fromId);
+		writeString(spill, toId);
+		spill.writeLong(count);
+		if (count >= 0)
+			writeString(spill, sources);
+		mappings++;
+	}
+
+	private boolean hasDatasource(String nodeId) {
+		return datasources.find(nodeId, nodeId.indexOf(':')) != null;
+	}
+
+	private void submitTerms() throws IOException {
+		List<Map<String, Object>> rows = terms;
+		terms = new ArrayList<>(batchSize);
+		submit(LOAD_TERMS, Map.of("rows", rows));
+	}
+
+	private void submit(String statement, Map<String, Object> parameters) throws IOException {
+		checkFailure();
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading into Neo4j");
+		}
+		loaders.execute(() -> {
+			try {
+				if (failure == null)
+					run(statement, parameters);
+			} catch (RuntimeException e) {
+				if (failure == null)
+					failure = new IOException(e);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+
+	// Runs a statement in a transaction of its own, retried by the driver on transient errors.
+	private void run(String statement, Map<String, Object> parameters) {
+		int[] attempts = new int[1];
+		SummaryCounters counters;
+		try (Session session = driver.session()) {
+			counters = session.writeTransaction(tx -> {
+				attempts[0]++;
+				return tx.run(statement, parameters).consume().counters();
+			});
+		}
+		nodesCreated.add(counters.nodesCreated());
+		relationshipsCreated.add(counters.relationshipsCreated());
+		retries.add(attempts[0] - 1);
+	}
+
+	// Waits for the batches sent so far.
+	private void await() throws IOException {
+		try {
+			inFlight.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading into Neo4j");
+		}
+		inFlight.release(permits);
+		checkFailure();
+	}
+
+	private void loadMappings() throws IOException {
+		spill.close();
+		List<Map<String, Object>> plans = new ArrayList<>();
+		for (EdgeRowPlan rowPlan : rowPlans) {
+			Map<String, Object> plan = new HashMap<>();
+			plan.put("sourcePrefix", rowPlan.getDatasourcePrefix());
+			plan.put("datasource", rowPlan.getConstant(Oxo1SSSOM2Neo.MappingHeader.DATASOURCE));
+			plan.put("sourceType", rowPlan.getConstant(Oxo1SSSOM2Neo.MappingHeader.SOURCE_TYPE));
+			plan.put("scope", rowPlan.getConstant(Oxo1SSSOM2Neo.MappingHeader.SCOPE));
+			plan.put("date", rowPlan.getConstant(Oxo1SSSOM2Neo.MappingHeader.DATE));
+			plans.add(plan);
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(spillFile), BUFFER_SIZE))) {
+			List<Map<String, Object>> rows = new ArrayList<>(batchSize);
+			// each batch only carries the plans of its own rows
+			List<Map<String, Object>> batchPlans = new ArrayList<>();
+			Map<Integer, Integer> batchPlanIds = new HashMap<>();
+			while (true) {
+				int rowPlanId;
+				try {
+					rowPlanId = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				Map<String, Object> row = new HashMap<>();
+				row.put("plan", batchPlanIds.computeIfAbsent(rowPlanId, id -> {
+					batchPlans.add(plans.get(id));
+					return batchPlans.size() - 1;
+				}));
+				row.put("from", readString(in));
+				row.put("to", readString(in));
+				long count = in.readLong();
+				if (count >= 0) {
+					row.put("count", count);
+					row.put("sources", Arrays.asList(readString(in).split(";")));
+				}
+				rows.add(row);
+				if (rows.size() == batchSize) {
+					submit(LOAD_MAPPINGS, Map.of("rows", rows, "plans", List.copyOf(batchPlans)));
+					rows = new ArrayList<>(batchSize);
+					batchPlans.clear();
+					batchPlanIds.clear();
+				}
+			}
+			if (!rows.isEmpty())
+				submit(LOAD_MAPPINGS, Map.of("rows", rows, "plans", List.copyOf(batchPlans)));
+		}
+		await();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null)
+			throw new IOException("Failed to load into Neo4j", failure);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!terms.isEmpty())
+				submitTerms();
+			// every term has to be there before the mappings match them
+			await();
+			loadMappings();
+			System.out.println("neo4j: loaded " + datasources.size() + " datasources, " + loadedTerms + " terms and "
+					+ mappings + " mappings, creating " + nodesCreated.sum() + " nodes and "
+					+ relationshipsCreated.sum() + " relationships, with " + retries.sum() + " retries; left out "
+					+ skippedTerms + " terms and " + skippedMappings + " mappings without a datasource");
+		} finally {
+			loaders.shutdownNow();
+			try {
+				spill.close();
+				Files.deleteIfExists(spillFile);
+				driver.close();
+			} finally {
+				output.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,536 @@
+package uk.ac.ebi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+// Set of the node CURIEs seen so far, replacing a pair of HashSet<String>. Each CURIE is split into a prefix, kept
+// once in a small dictionary, and a local part encoded into an append-only byte arena: a number for all-digit local
+// parts and UTF-8 otherwise. An open-addressing table of arena offsets indexes the entries. The arena and the table
+// are ByteBuffers, so they can live on or off the heap, and they are never allowed to grow past the memory budget.
+//
+// Every entry also keeps its ordinal, the number of nodes added before it, which serves as the node's integer id.
+//
+// One thread adds entries, any number of threads can call contains() at the same time.
+public class NodeIdStore {
+
+	private static final int CHUNK_SIZE = 1 << 24;
+	private static final int CHUNK_BITS = 24;
+	private static final int SLOT_SIZE = 12; // long arena offset + 1, int hash
+	private static final int INITIAL_SLOTS = 1 << 16;
+	private static final int MAX_SLOTS = 1 << 27; // largest power of two whose table fits in one ByteBuffer
+	private static final int MAX_NUMERIC_DIGITS = 18;
+
+	private static final int ENTRY_HEADER = 5; // byte state, int ordinal
+	private static final byte PRINTED = 0;
+	private static final byte PENDING = 1;
+
+	private final boolean offHeap;
+	private final long memoryBudget;
+	private final StampedLock lock = new StampedLock();
+	private final ThreadLocal<Key> keys = ThreadLocal.withInitial(Key::new);
+
+	private volatile Prefixes prefixes = new Prefixes(new String[16], new int[16], 0);
+
+	private ByteBuffer table;
+	private int slotMask;
+	private long size;
+	private long pendingCount;
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private ByteBuffer[] chunkArray = new ByteBuffer[0];
+
+	private long allocated;
+
+	public NodeIdStore(boolean offHeap, long memoryBudget) {
+		this.offHeap = offHeap;
+		this.memoryBudget = memoryBudget;
+		this.table = allocate((long)INITIAL_SLOTS * SLOT_SIZE);
+		this.slotMask = INITIAL_SLOTS - 1;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	// Nodes added as pending, which forEachPending goes through.
+	public long pendingCount() {
+		return pendingCount;
+	}
+
+	public long getAllocatedBytes() {
+		return allocated;
+	}
+
+	public boolean contains(String nodeId) {
+		Key key = keys.get();
+		if (!key.encode(nodeId, prefixes, false))
+			return false; // unknown prefix
+
+		long stamp = lock.tryOptimisticRead();
+		boolean found;
+		try {
+			found = find(key) >= 0;
+		} catch (RuntimeException e) {
+			found = false; // torn read while the table was being resized, validate() below catches it
+		}
+		if (lock.validate(stamp))
+			return found;
+
+		stamp = lock.readLock();
+		try {
+			return find(key) >= 0;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// Only called by the writing thread. Returns false if the node was already in the store.
+	public boolean add(String nodeId, boolean pending) {
+		Key key = keys.get();
+		key.encode(nodeId, prefixes, false);
+		if (key.prefixId != Key.UNKNOWN_PREFIX && find(key) >= 0)
+			return false;
+
+		long stamp = lock.writeLock();
+		try {
+			if (key.prefixId == Key.UNKNOWN_PREFIX)
+				key.encode(nodeId, addPrefix(nodeId.substring(0, nodeId.indexOf(':'))), true);
+
+			if ((size + 1) * 5 > (long)(slotMask + 1) * 3)
+				resize();
+
+			long offset = append(key, pending ? PENDING : PRINTED, (int)size);
+			int slot = key.hash & slotMask;
+			while (table.getLong(slot * SLOT_SIZE) != 0)
+				slot = (slot + 1) & slotMask;
+			table.putInt(slot * SLOT_SIZE + 8, key.hash);
+			table.putLong(slot * SLOT_SIZE, offset + 1);
+			size++;
+			if (pending)
+				pendingCount++;
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// Only called by the writing thread. Returns the ordinal of the node, or -1 if it is not in the store.
+	public long ordinal(String nodeId) {
+		Key key = keys.get();
+		if (!key.encode(nodeId, prefixes, false))
+			return -1;
+		long offset = find(key);
+		if (offset < 0)
+			return -1;
+		ByteBuffer chunk = chunkArray[(int)(offset >>> CHUNK_BITS)];
+		return chunk.getInt((int)(offset & (CHUNK_SIZE - 1)) + 1); // right after the state byte
+	}
+
+	// Calls the consumer with every node added as pending, in the order they were added.
+	public void forEachPending(NodeIdConsumer consumer) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (ByteBuffer chunk : chunks) {
+			int pos = 0;
+			int end = chunk.position();
+			while (pos < end) {
+				boolean pending = chunk.get(pos) == PENDING;
+				pos = decode(chunk, pos + ENTRY_HEADER, sb);
+				if (pending)
+					consumer.accept(sb.toString());
+			}
+		}
+	}
+
+	// Writes the whole store for a checkpoint: the prefix dictionary and the arena, as they are. Only called by the
+	// writing thread.
+	public void writeTo(DataOutputStream out) throws IOException {
+		Prefixes prefixes = this.prefixes;
+		out.writeInt(prefixes.count);
+		for (String prefix : prefixes.names)
+			out.writeUTF(prefix);
+		out.writeLong(size);
+		out.writeLong(pendingCount);
+		out.writeInt(chunks.size());
+		byte[] buffer = new byte[1 << 16];
+		for (ByteBuffer chunk : chunks) {
+			int end = chunk.position();
+			out.writeInt(end);
+			for (int pos = 0; pos < end; pos += buffer.length) {
+				int length = Math.min(buffer.length, end - pos);
+				chunk.get(pos, buffer, 0, length);
+				out.write(buffer, 0, length);
+			}
+		}
+	}
+
+	// Reads what writeTo wrote into this store, which must still be empty. The table is rebuilt from the arena, and
+	// the nodes keep their ordinals and pending state.
+	public void readFrom(DataInputStream in) throws IOException {
+		if (size > 0)
+			throw new IllegalStateException("Node store already has " + size + " nodes");
+		Prefixes restored = prefixes;
+		int prefixCount = in.readInt();
+		for (int i = 0; i < prefixCount; i++)
+			restored = restored.with(in.readUTF());
+		long restoredSize = in.readLong();
+		long restoredPending = in.readLong();
+
+		long stamp = lock.writeLock();
+		try {
+			prefixes = restored;
+			int slots = INITIAL_SLOTS;
+			while ((restoredSize + 1) * 5 > (long)slots * 3) {
+				if (slots >= MAX_SLOTS)
+					throw new IllegalStateException("Node store is full with " + restoredSize + " nodes");
+				slots *= 2;
+			}
+			allocated -= table.capacity();
+			table = allocate((long)slots * SLOT_SIZE);
+			slotMask = slots - 1;
+
+			int chunkCount = in.readInt();
+			byte[] buffer = new byte[1 << 16];
+			for (int i = 0; i < chunkCount; i++) {
+				int end = in.readInt();
+				ByteBuffer chunk = allocate(CHUNK_SIZE);
+				for (int pos = 0; pos < end; pos += buffer.length) {
+					int length = Math.min(buffer.length, end - pos);
+					in.readFully(buffer, 0, length);
+					chunk.put(buffer, 0, length);
+				}
+				chunks.add(chunk);
+			}
+			chunkArray = chunks.toArray(new ByteBuffer[0]);
+
+			byte[] key = new byte[64];
+			for (int i = 0; i < chunkArray.length; i++) {
+				ByteBuffer chunk = chunkArray[i];
+				int pos = 0;
+				while (pos < chunk.position()) {
+					int keyStart = pos + ENTRY_HEADER;
+					int keyEnd = keyEnd(chunk, keyStart);
+					int length = keyEnd - keyStart;
+					if (length > key.length)
+						key = new byte[Math.max(key.length * 2, length)];
+					chunk.get(keyStart, key, 0, length);
+					int hash = Key.hash(key, length);
+					int slot = hash & slotMask;
+					while (table.getLong(slot * SLOT_SIZE) != 0)
+						slot = (slot + 1) & slotMask;
+					table.putInt(slot * SLOT_SIZE + 8, hash);
+					table.putLong(slot * SLOT_SIZE, (((long)i << CHUNK_BITS) | pos) + 1);
+					pos = keyEnd;
+				}
+			}
+			size = restoredSize;
+			pendingCount = restoredPending;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public interface NodeIdConsumer {
+		void accept(String nodeId) throws IOException;
+	}
+
+	private long find(Key key) {
+		ByteBuffer table = this.table;
+		int mask = this.slotMask;
+		ByteBuffer[] chunks = this.chunkArray;
+		int slot = key.hash & mask;
+		while (true) {
+			long offset = table.getLong(slot * SLOT_SIZE) - 1;
+			if (offset < 0)
+				return -1;
+			if (table.getInt(slot * SLOT_SIZE + 8) == key.hash && key.matches(chunks, offset))
+				return offset;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private long append(Key key, byte state, int ordinal) {
+		int entrySize = key.length + ENTRY_HEADER;
+		if (entrySize > CHUNK_SIZE)
+			throw new IllegalArgumentException("Node id of " + key.length + " bytes is too long for the node store");
+		ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (chunk == null || chunk.remaining() < entrySize) {
+			chunk = allocate(CHUNK_SIZE);
+			chunks.add(chunk);
+			chunkArray = chunks.toArray(new ByteBuffer[0]);
+		}
+		long offset = ((long)(chunks.size() - 1) << CHUNK_BITS) | chunk.position();
+		chunk.put(state);
+		chunk.putInt(ordinal);
+		chunk.put(key.bytes, 0, key.length);
+		return offset;
+	}
+
+	private void resize() {
+		int slots = slotMask + 1;
+		if (slots >= MAX_SLOTS)
+			throw new IllegalStateException("Node store is full with " + size + " nodes");
+		int newSlots = slots * 2;
+		ByteBuffer newTable = allocate((long)newSlots * SLOT_SIZE);
+		int newMask = newSlots - 1;
+		for (int slot = 0; slot < slots; slot++) {
+			long offset = table.getLong(slot * SLOT_SIZE);
+			if (offset == 0)
+				continue;
+			int hash = table.getInt(slot * SLOT_SIZE + 8);
+			int newSlot = hash & newMask;
+			while (newTable.getLong(newSlot * SLOT_SIZE) != 0)
+				newSlot = (newSlot + 1) & newMask;
+			newTable.putLong(newSlot * SLOT_SIZE, offset);
+			newTable.putInt(newSlot * SLOT_SIZE + 8, hash);
+		}
+		allocated -= table.capacity();
+		table = newTable;
+		slotMask = newMask;
+	}
+
+	private ByteBuffer allocate(long bytes) {
+		if (allocated + bytes > memoryBudget)
+			throw new IllegalStateException("Node store needs more than its memory budget of " + memoryBudget
+					+ " bytes after " + size + " nodes");
+		allocated += bytes;
+		return offHeap ? ByteBuffer.allocateDirect((int)bytes) : ByteBuffer.allocate((int)bytes);
+	}
+
+	private Prefixes addPrefix(String prefix) {
+		Prefixes current = prefixes;
+		Prefixes updated = current.with(prefix);
+		prefixes = updated;
+		return updated;
+	}
+
+	// The end of the encoded CURIE starting at pos: the prefix id, the header, then the number or the UTF-8 bytes.
+	private static int keyEnd(ByteBuffer chunk, int pos) {
+		while (chunk.get(pos++) < 0)
+			;
+		long header = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = chunk.get(pos++);
+			header |= (long)(b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		if ((header & 1) == 1) {
+			while (chunk.get(pos++) < 0)
+				;
+			return pos;
+		}
+		return pos + (int)(header >>> 1);
+	}
+
+	private int decode(ByteBuffer chunk, int pos, StringBuilder sb) {
+		sb.setLength(0);
+		long prefixId = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = chunk.get(pos++);
+			prefixId |= (long)(b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		long header = 0;
+		shift = 0;
+		do {
+			b = chunk.get(pos++);
+			header |= (long)(b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+
+		if (prefixId > 0)
+			sb.append(prefixes.names[(int)prefixId - 1]).append(':');
+
+		int length = (int)(header >>> 1);
+		if ((header & 1) == 1) {
+			long value = 0;
+			shift = 0;
+			do {
+				b = chunk.get(pos++);
+				value |= (long)(b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			String digits = Long.toString(value);
+			for (int i = digits.length(); i < length; i++)
+				sb.append('0');
+			sb.append(digits);
+		} else {
+			byte[] utf8 = new byte[length];
+			chunk.get(pos, utf8);
+			sb.append(new String(utf8, StandardCharsets.UTF_8));
+			pos += length;
+		}
+		return pos;
+	}
+
+	// Prefix dictionary, copied on write so reader threads never see it change. Id 0 means the CURIE has no colon.
+	private static final class Prefixes {
+		final String[] slots;
+		final int[] ids;
+		final String[] names;
+		final int count;
+
+		Prefixes(String[] slots, int[] ids, int count) {
+			this.slots = slots;
+			this.ids = ids;
+			this.count = count;
+			this.names = new String[count];
+			for (int i = 0; i < slots.length; i++)
+				if (slots[i] != null)
+					names[ids[i] - 1] = slots[i];
+		}
+
+		int find(String nodeId, int end) {
+			int mask = slots.length - 1;
+			int slot = hash(nodeId, end) & mask;
+			while (slots[slot] != null) {
+				String prefix = slots[slot];
+				if (prefix.length() == end && nodeId.regionMatches(0, prefix, 0, end))
+					return ids[slot];
+				slot = (slot + 1) & mask;
+			}
+			return Key.UNKNOWN_PREFIX;
+		}
+
+		Prefixes with(String prefix) {
+			int capacity = slots.length;
+			while ((count + 1) * 2 > capacity)
+				capacity *= 2;
+			String[] newSlots = new String[capacity];
+			int[] newIds = new int[capacity];
+			for (int i = 0; i < slots.length; i++)
+				if (slots[i] != null)
+					insert(newSlots, newIds, slots[i], ids[i]);
+			insert(newSlots, newIds, prefix, count + 1);
+			return new Prefixes(newSlots, newIds, count + 1);
+		}
+
+		private static void insert(String[] slots, int[] ids, String prefix, int id) {
+			int mask = slots.length - 1;
+			int slot = hash(prefix, prefix.length()) & mask;
+			while (slots[slot] != null)
+				slot = (slot + 1) & mask;
+			slots[slot] = prefix;
+			ids[slot] = id;
+		}
+
+		private static int hash(String s, int end) {
+			int h = 0;
+			for (int i = 0; i < end; i++)
+				h = 31 * h + s.charAt(i);
+			return h ^ (h >>> 16);
+		}
+	}
+
+	// Encoded form of one CURIE, reused by each thread.
+	private static final class Key {
+		static final int UNKNOWN_PREFIX = -1;
+
+		byte[] bytes = new byte[64];
+		int length;
+		int prefixId;
+		int hash;
+
+		// Returns false if the prefix is not in the dictionary yet; the key is then not usable for lookups.
+		boolean encode(String nodeId, Prefixes prefixes, boolean mustExist) {
+			int colon = nodeId.indexOf(':');
+			int localStart = 0;
+			prefixId = 0;
+			if (colon >= 0) {
+				prefixId = prefixes.find(nodeId, colon);
+				if (prefixId == UNKNOWN_PREFIX) {
+					if (mustExist)
+						throw new IllegalStateException("Prefix of " + nodeId + " is not in the dictionary");
+					return false;
+				}
+				localStart = colon + 1;
+			}
+
+			length = 0;
+			putVarint(prefixId);
+
+			int localLength = nodeId.length() - localStart;
+			if (isNumeric(nodeId, localStart, localLength)) {
+				putVarint(((long)localLength << 1) | 1);
+				putVarint(Long.parseLong(nodeId, localStart, nodeId.length(), 10));
+			} else if (isAscii(nodeId, localStart)) {
+				putVarint((long)localLength << 1);
+				ensureCapacity(localLength);
+				for (int i = localStart; i < nodeId.length(); i++)
+					bytes[length++] = (byte)nodeId.charAt(i);
+			} else {
+				byte[] utf8 = nodeId.substring(localStart).getBytes(StandardCharsets.UTF_8);
+				putVarint((long)utf8.length << 1);
+				ensureCapacity(utf8.length);
+				System.arraycopy(utf8, 0, bytes, length, utf8.length);
+				length += utf8.length;
+			}
+
+			hash = hash(bytes, length);
+			return true;
+		}
+
+		static int hash(byte[] bytes, int length) {
+			int h = 0x9747b28c;
+			for (int i = 0; i < length; i++) {
+				h ^= bytes[i];
+				h *= 0x5bd1e995;
+				h ^= h >>> 15;
+			}
+			return h;
+		}
+
+		boolean matches(ByteBuffer[] chunks, long offset) {
+			ByteBuffer chunk = chunks[(int)(offset >>> CHUNK_BITS)];
+			int pos = (int)(offset & (CHUNK_SIZE - 1)) + ENTRY_HEADER;
+			if (pos + length > chunk.capacity())
+				return false;
+			for (int i = 0; i < length; i++)
+				if (chunk.get(pos + i) != bytes[i])
+					return false;
+			return true;
+		}
+
+		private static boolean isNumeric(String s, int start, int length) {
+			if (length == 0 || length > MAX_NUMERIC_DIGITS)
+				return false;
+			for (int i = start; i < start + length; i++) {
+				char c = s.charAt(i);
+				if (c < '0' || c > '9')
+					return false;
+			}
+			return true;
+		}
+
+		private static boolean isAscii(String s, int start) {
+			for (int i = start; i < s.length(); i++)
+				if (s.charAt(i) >= 0x80)
+					return false;
+			return true;
+		}
+
+		private void putVarint(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7fL) != 0) {
+				bytes[length++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte)value;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.gson.Gson;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.util.Timeout;
+
+// Fetches the ontologies of an OLS instance from api/ontologies, following its pagination. The first page tells how
+// many pages there are, the others are then fetched at the same time over one pooled client and merged in page order.
+//
+// With a cache directory, every page is kept on disk with its ETag and Last-Modified headers. A page younger than the
+// TTL is used without asking OLS, an older one is revalidated with a conditional request, and in offline mode the
+// cached pages are used whatever their age.
+public class OLSOntologiesFetcher {
+
+	static final int PAGE_SIZE = 100;
+	private static final int MAX_CONNECTIONS = 4;
+	private static final Timeout TIMEOUT = Timeout.ofMinutes(1);
+
+	private final String olsUrl;
+	private Path cacheDir = null;
+	private Duration cacheTtl = Duration.ofDays(1);
+	private boolean offline = false;
+
+	public OLSOntologiesFetcher(String olsUrl) {
+		this.olsUrl = olsUrl;
+	}
+
+	// Keeps the pages of this OLS instance in a subdirectory of the given directory.
+	public OLSOntologiesFetcher setCache(Path cacheDir, Duration cacheTtl) {
+		this.cacheDir = cacheDir.resolve(SSSOMSnapshot.sha256(olsUrl).substring(0, 16));
+		this.cacheTtl = cacheTtl;
+		return this;
+	}
+
+	// Only uses the cached pages, failing if there are none.
+	public OLSOntologiesFetcher setOffline(boolean offline) {
+		this.offline = offline;
+		return this;
+	}
+
+	Map<String, Datasources.Datasource> fetch() throws IOException {
+		if (offline && cacheDir == null)
+			throw new IOException("Offline mode needs an OLS cache directory");
+		if (cacheDir != null)
+			Files.createDirectories(cacheDir);
+
+		try (CloseableHttpClient httpClient = offline ? null : httpClient()) {
+			Datasources.OntologiesPage first = fetchPage(httpClient, 0);
+			List<Datasources.OntologiesPage> pages = new ArrayList<>();
+			pages.add(first);
+
+			if (first.totalPages > 1) {
+				ExecutorService fetchers = Executors.newFixedThreadPool(
+						Math.min(MAX_CONNECTIONS, first.totalPages - 1), runnable -> {
+							Thread thread = new Thread(runnable, "ols-fetcher");
+							thread.setDaemon(true);
+							return thread;
+						});
+				try {
+					List<Future<Datasources.OntologiesPage>> futures = new ArrayList<>();
+					for (int page = 1; page < first.totalPages; page++) {
+						int number = page;
+						futures.add(fetchers.submit(() -> fetchPage(httpClient, number)));
+					}
+					for (Future<Datasources.OntologiesPage> future : futures)
+						pages.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while fetching OLS ontologies", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException)e.getCause();
+					throw new IOException("Failed to fetch OLS ontologies", e.getCause());
+				} finally {
+					fetchers.shutdownNow();
+				}
+			}
+
+			Map<String, Datasources.Datasource> datasources = new HashMap<>();
+			for (Datasources.OntologiesPage page : pages)
+				datasources.putAll(page.datasources);
+			System.out.println("fetched " + datasources.size() + " ontologies in " + pages.size() + " pages from " + olsUrl);
+			return datasources;
+		}
+	}
+
+	private CloseableHttpClient httpClient() {
+		return HttpClients.custom()
+				.setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+						.setMaxConnTotal(MAX_CONNECTIONS)
+						.setMaxConnPerRoute(MAX_CONNECTIONS)
+						.build())
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectionRequestTimeout(TIMEOUT)
+						.setResponseTimeout(TIMEOUT)
+						.build())
+				.build();
+	}
+
+	private Datasources.OntologiesPage fetchPage(CloseableHttpClient httpClient, int page) throws IOException {
+		String url = olsUrl + "api/ontologies?size=" + PAGE_SIZE + "&page=" + page;
+		Path bodyPath = cacheDir == null ? null : cacheDir.resolve("ontologies-" + page + ".json");
+		Path metaPath = cacheDir == null ? null : cacheDir.resolve("ontologies-" + page + ".meta.json");
+		CachedPage cached = bodyPath != null && Files.exists(bodyPath) && Files.exists(metaPath)
+				? readMeta(metaPath) : null;
+
+		if (offline) {
+			if (cached == null)
+				throw new IOException("No cached OLS ontologies for " + url + " in " + cacheDir);
+			return readCachedPage(bodyPath);
+		}
+		if (cached != null && System.currentTimeMillis() - cached.fetchedAt < cacheTtl.toMillis())
+			return readCachedPage(bodyPath);
+
+		try {
+			return request(httpClient, url, page, cached, bodyPath, metaPath);
+		} catch (IOException e) {
+			if (cached == null)
+				throw e;
+			System.out.println("Failed to fetch " + url + " (" + e.getMessage() + "), using the cached page");
+			return readCachedPage(bodyPath);
+		}
+	}
+
+	// Without a cache the response is decoded while it is read, otherwise it is saved first and decoded from the file.
+	private Datasources.OntologiesPage request(CloseableHttpClient httpClient, String url, int page,
+											   CachedPage cached, Path bodyPath, Path metaPath) throws IOException {
+		HttpGet httpGet = new HttpGet(url);
+		if (cached != null && cached.etag != null)
+			httpGet.addHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+		if (cached != null && cached.lastModified != null)
+			httpGet.addHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+
+		return httpClient.execute(httpGet, response -> {
+			int status = response.getCode();
+			if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+				cached.fetchedAt = System.currentTimeMillis();
+				writeMeta(metaPath, cached);
+				return readCachedPage(bodyPath);
+			}
+			if (status < 200 || status >= 300 || response.getEntity() == null)
+				throw new IOException("OLS returned status " + status);
+
+			if (cacheDir == null) {
+				try (Reader reader = new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8)) {
+					return Datasources.readOntologiesPage(reader);
+				}
+			}
+
+			// only replaces the cached page once the new one has been decoded
+			Path temporary = cacheDir.resolve("ontologies-" + page + ".json.tmp");
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				response.getEntity().writeTo(out);
+			}
+			Datasources.OntologiesPage ontologiesPage = readCachedPage(temporary);
+			Files.move(temporary, bodyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			CachedPage fetched = new CachedPage();
+			fetched.url = url;
+			fetched.etag = headerValue(response.getFirstHeader(HttpHeaders.ETAG));
+			fetched.lastModified = headerValue(response.getFirstHeader(HttpHeaders.LAST_MODIFIED));
+			fetched.fetchedAt = System.currentTimeMillis();
+			writeMeta(metaPath, fetched);
+			return ontologiesPage;
+		});
+	}
+
+	private static Datasources.OntologiesPage readCachedPage(Path bodyPath) throws IOException {
+		try (Reader reader = Files.newBufferedReader(bodyPath, StandardCharsets.UTF_8)) {
+			return Datasources.readOntologiesPage(reader);
+		}
+	}
+
+	private static String headerValue(Header header) {
+		return header == null ? null : header.getValue();
+	}
+
+	private static CachedPage readMeta(Path metaPath) throws IOException {
+		try (Reader reader = Files.newBufferedReader(metaPath, StandardCharsets.UTF_8)) {
+			return new Gson().fromJson(reader, CachedPage.class);
+		}
+	}
+
+	private static void writeMeta(Path metaPath, CachedPage cachedPage) throws IOException {
+		Path temporary = metaPath.resolveSibling(metaPath.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			new Gson().toJson(cachedPage, writer);
+		}
+		Files.move(temporary, metaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// What the cache knows about a page, next to the page itself.
+	static class CachedPage {
+		String url;
+		String etag;
+		String lastModified;
+		long fetchedAt;
+	}
+}
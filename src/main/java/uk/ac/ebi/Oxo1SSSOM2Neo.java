@@ -1,17 +1,17 @@
 package uk.ac.ebi;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import com.google.gson.Gson;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -20,17 +20,17 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
-import org.yaml.snakeyaml.Yaml;
 
 
 public class Oxo1SSSOM2Neo {
+
+	static final CSVFormat CSV_FORMAT = CSVFormat.POSTGRESQL_CSV;
+
     public static void main(String[] args) throws IOException {
 		Options options = new Options();
 
-        Option input = new Option(null, "input", true, "sssom tsv file or directory containing tsv files");
+        Option input = new Option(null, "input", true, "sssom tsv file or directory containing tsv files, which may be compressed (.tsv.gz or .tsv.zst)");
         input.setRequired(true);
         options.addOption(input);
 
@@ -42,14 +42,117 @@ public class Oxo1SSSOM2Neo {
 		outputDatasourcesOption.setRequired(true);
 		options.addOption(outputDatasourcesOption);
 
-        Option outputNodes = new Option(null, "output-nodes", true, "output path for terms tsv file");
-        outputNodes.setRequired(true);
+        Option outputNodes = new Option(null, "output-nodes", true, "output path for terms tsv file, compressed if it ends with .gz or .zst");
         options.addOption(outputNodes);
 
-        Option outputEdges = new Option(null, "output-edges", true, "output path for mappings tsv file");
-        outputEdges.setRequired(true);
+        Option outputEdges = new Option(null, "output-edges", true, "output path for mappings tsv file, compressed if it ends with .gz or .zst");
         options.addOption(outputEdges);
 
+		Option threadsOption = new Option(null, "threads", true, "number of sssom files to read at the same time (default 1)");
+		options.addOption(threadsOption);
+
+		Option compressionThreadsOption = new Option(null, "compression-threads", true, "number of threads compressing .gz and .zst outputs (default: all cores)");
+		options.addOption(compressionThreadsOption);
+
+		Option nodeStoreOption = new Option(null, "node-store", true, "where to keep the seen node ids: heap (default) or off-heap");
+		options.addOption(nodeStoreOption);
+
+		Option nodeStoreMemoryOption = new Option(null, "node-store-memory", true, "memory budget for the seen node ids, e.g. 2g");
+		options.addOption(nodeStoreMemoryOption);
+
+		Option includePrefixesOption = new Option(null, "include-prefixes", true, "comma separated prefixes, only mappings with a subject or object in one of them are converted");
+		options.addOption(includePrefixesOption);
+
+		Option minConfidenceOption = new Option(null, "min-confidence", true, "only mappings with at least this confidence are converted");
+		options.addOption(minConfidenceOption);
+
+		Option manifestDirOption = new Option(null, "manifest-dir", true, "directory keeping what each sssom file contributed, so unchanged files are not parsed again");
+		options.addOption(manifestDirOption);
+
+		Option deltaDirOption = new Option(null, "delta-dir", true, "output directory for the changes since the last run (default: <manifest-dir>/delta)");
+		options.addOption(deltaDirOption);
+
+		Option bulkImportDirOption = new Option(null, "bulk-import-dir", true, "output directory for neo4j-admin import files, instead of --output-nodes and --output-edges");
+		options.addOption(bulkImportDirOption);
+
+		Option snapshotDirOption = new Option(null, "snapshot-dir", true, "directory keeping a binary snapshot of every parsed sssom file, so unchanged files are not parsed again, whatever the filters and outputs");
+		options.addOption(snapshotDirOption);
+
+		Option solrDirOption = new Option(null, "solr-dir", true, "output directory for the terms and mappings as Solr JSON documents, in chunks of --solr-chunk-size");
+		options.addOption(solrDirOption);
+
+		Option solrChunkSizeOption = new Option(null, "solr-chunk-size", true, "number of Solr documents per chunk (default 5000)");
+		options.addOption(solrChunkSizeOption);
+
+		Option solrUrlOption = new Option(null, "solr-url", true, "URL of the Solr core to post the chunks of --solr-dir to, e.g. http://localhost:8983/solr/oxo");
+		options.addOption(solrUrlOption);
+
+		Option neo4jConfigOption = new Option(null, "neo4j-config", true, "config.ini with the neoURL, neoUser and neoPass of a Neo4j to also load the terms and mappings into");
+		options.addOption(neo4jConfigOption);
+
+		Option neo4jBatchSizeOption = new Option(null, "neo4j-batch-size", true, "rows per Neo4j transaction (default 10000)");
+		options.addOption(neo4jBatchSizeOption);
+
+		Option neo4jParallelismOption = new Option(null, "neo4j-parallelism", true, "Neo4j transactions loading at the same time (default 4)");
+		options.addOption(neo4jParallelismOption);
+
+		Option neo4jWipeOption = new Option(null, "neo4j-wipe", false, "delete the terms, mappings and datasources in Neo4j, in batches as OxoNeo4jLoader.py -W does, before loading");
+		options.addOption(neo4jWipeOption);
+
+		Option neo4jWipeBatchSizeOption = new Option(null, "neo4j-wipe-batch-size", true, "nodes or relationships deleted per Neo4j transaction by --neo4j-wipe (default 50000)");
+		options.addOption(neo4jWipeBatchSizeOption);
+
+		Option neo4jEncryptedOption = new Option(null, "neo4j-encrypted", false, "connect to Neo4j with TLS");
+		options.addOption(neo4jEncryptedOption);
+
+		Option olsCacheDirOption = new Option(null, "ols-cache-dir", true, "directory caching the OLS ontologies between runs");
+		options.addOption(olsCacheDirOption);
+
+		Option olsCacheTtlOption = new Option(null, "ols-cache-ttl", true, "how long cached OLS ontologies are used before asking OLS again, e.g. 12h (default 1d)");
+		options.addOption(olsCacheTtlOption);
+
+		Option offlineOption = new Option(null, "offline", false, "only use the OLS ontologies in --ols-cache-dir");
+		options.addOption(offlineOption);
+
+		Option progressIntervalOption = new Option(null, "progress-interval", true, "how often to print progress while converting, e.g. 1m, 0 for never (default 30s)");
+		options.addOption(progressIntervalOption);
+
+		Option reportOption = new Option(null, "report", true, "output path for a JSON report of the conversion: per-file timings, node dedup, unresolved prefixes, bytes written and peak heap");
+		options.addOption(reportOption);
+
+		Option shardsOption = new Option(null, "shards", true, "split the terms and mappings files into N shards, by a hash of the term curie and of the mapping fromCurie (default 1)");
+		options.addOption(shardsOption);
+
+		Option nodeResolutionOption = new Option(null, "node-resolution", true, "how node labels are decided: streaming (default, the first occurrence of a node decides) or sorted (all occurrences are sorted on disk, terms come out in CURIE order)");
+		options.addOption(nodeResolutionOption);
+
+		Option nodeLabelOption = new Option(null, "node-label", true, "label kept by sorted node resolution: first (default, the first non-empty one) or most-frequent");
+		options.addOption(nodeLabelOption);
+
+		Option nodeSortMemoryOption = new Option(null, "node-sort-memory", true, "memory for sorting node candidates before spilling them to disk, e.g. 1g (default 256m)");
+		options.addOption(nodeSortMemoryOption);
+
+		Option aggregateMappingsOption = new Option(null, "aggregate-mappings", false, "write one mapping per fromCurie, toCurie and datasource prefix, with count and sources columns");
+		options.addOption(aggregateMappingsOption);
+
+		Option aggregateMemoryOption = new Option(null, "aggregate-memory", true, "memory for aggregating mappings before spilling them to disk, e.g. 1g (default 256m)");
+		options.addOption(aggregateMemoryOption);
+
+		Option normalizedEdgesOption = new Option(null, "normalized-edges", false, "only reference the datasource of a mapping by its prefix, instead of repeating its JSON on every mapping; datasources of sssom files that are not in OLS are added to the datasources file");
+		options.addOption(normalizedEdgesOption);
+
+		Option checkpointDirOption = new Option(null, "checkpoint-dir", true, "directory for checkpoints of the conversion, which --resume continues from after a crash");
+		options.addOption(checkpointDirOption);
+
+		Option checkpointIntervalOption = new Option(null, "checkpoint-interval", true, "how often to take a checkpoint, after the file being converted, e.g. 30m (default 10m)");
+		options.addOption(checkpointIntervalOption);
+
+		Option resumeOption = new Option(null, "resume", false, "continue from the checkpoint in --checkpoint-dir, truncating the outputs to it");
+		options.addOption(resumeOption);
+
+		Option spillDirOption = new Option(null, "spill-dir", true, "directory for what sorted node resolution and mapping aggregation spill to disk (default: the temporary directory)");
+		options.addOption(spillDirOption);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -64,12 +167,101 @@ public class Oxo1SSSOM2Neo {
             return;
         }
 
+		if (!cmd.hasOption("bulk-import-dir") && (!cmd.hasOption("output-nodes") || !cmd.hasOption("output-edges"))) {
+			System.out.println("Missing required options: output-nodes and output-edges, or bulk-import-dir");
+			formatter.printHelp("oxo1-sssom2neo", options);
+
+			System.exit(1);
+			return;
+		}
+
         Path inputPath = Path.of( cmd.getOptionValue("input") );
 
 		String olsUlr = cmd.getOptionValue("ols-url");
 		Path outputDatasources = Path.of(cmd.getOptionValue("output-datasources"));
-        Path outputNodesPath = Path.of(cmd.getOptionValue("output-nodes"));
-        Path outputEdgesPath = Path.of(cmd.getOptionValue("output-edges"));
+        Path outputNodesPath = cmd.hasOption("output-nodes") ? Path.of(cmd.getOptionValue("output-nodes")) : null;
+        Path outputEdgesPath = cmd.hasOption("output-edges") ? Path.of(cmd.getOptionValue("output-edges")) : null;
+
+		// a value that does not parse is reported like an invalid combination of options
+		ConversionOptions conversionOptions = new ConversionOptions();
+		Duration olsCacheTtl = null;
+		try {
+			conversionOptions
+					.setThreads(Integer.parseInt(cmd.getOptionValue("threads", "1")))
+					.setNodeStoreOffHeap(ConversionOptions.parseEnum(ConversionOptions.NodeStore.class,
+							cmd.getOptionValue("node-store", "heap")) == ConversionOptions.NodeStore.OFF_HEAP);
+			if (cmd.hasOption("compression-threads"))
+				conversionOptions.setCompressionThreads(Integer.parseInt(cmd.getOptionValue("compression-threads")));
+			if (cmd.hasOption("include-prefixes"))
+				conversionOptions.setIncludedPrefixes(List.of(cmd.getOptionValue("include-prefixes").split(",")));
+			if (cmd.hasOption("min-confidence"))
+				conversionOptions.setMinConfidence(Double.parseDouble(cmd.getOptionValue("min-confidence")));
+			if (cmd.hasOption("node-store-memory"))
+				conversionOptions.setNodeStoreMemoryBudget(
+						ConversionOptions.parseByteSize(cmd.getOptionValue("node-store-memory")));
+			if (cmd.hasOption("manifest-dir"))
+				conversionOptions.setManifestDir(Path.of(cmd.getOptionValue("manifest-dir")));
+			if (cmd.hasOption("delta-dir"))
+				conversionOptions.setDeltaDir(Path.of(cmd.getOptionValue("delta-dir")));
+			if (cmd.hasOption("snapshot-dir"))
+				conversionOptions.setSnapshotDir(Path.of(cmd.getOptionValue("snapshot-dir")));
+			if (cmd.hasOption("solr-dir"))
+				conversionOptions.setSolrDir(Path.of(cmd.getOptionValue("solr-dir")));
+			if (cmd.hasOption("solr-chunk-size"))
+				conversionOptions.setSolrChunkSize(Integer.parseInt(cmd.getOptionValue("solr-chunk-size")));
+			if (cmd.hasOption("solr-url"))
+				conversionOptions.setSolrUrl(cmd.getOptionValue("solr-url"));
+			if (cmd.hasOption("neo4j-config"))
+				conversionOptions.setNeo4jConfig(Path.of(cmd.getOptionValue("neo4j-config")));
+			if (cmd.hasOption("neo4j-batch-size"))
+				conversionOptions.setNeo4jBatchSize(Integer.parseInt(cmd.getOptionValue("neo4j-batch-size")));
+			if (cmd.hasOption("neo4j-parallelism"))
+				conversionOptions.setNeo4jParallelism(Integer.parseInt(cmd.getOptionValue("neo4j-parallelism")));
+			conversionOptions.setNeo4jWipe(cmd.hasOption("neo4j-wipe"));
+			if (cmd.hasOption("neo4j-wipe-batch-size"))
+				conversionOptions.setNeo4jWipeBatchSize(Integer.parseInt(cmd.getOptionValue("neo4j-wipe-batch-size")));
+			conversionOptions.setNeo4jEncrypted(cmd.hasOption("neo4j-encrypted"));
+			if (cmd.hasOption("bulk-import-dir"))
+				conversionOptions.setBulkImportDir(Path.of(cmd.getOptionValue("bulk-import-dir")));
+			if (cmd.hasOption("progress-interval"))
+				conversionOptions.setProgressInterval(
+						ConversionOptions.parseDuration(cmd.getOptionValue("progress-interval")));
+			if (cmd.hasOption("report"))
+				conversionOptions.setReportPath(Path.of(cmd.getOptionValue("report")));
+			if (cmd.hasOption("shards"))
+				conversionOptions.setShards(Integer.parseInt(cmd.getOptionValue("shards")));
+			if (cmd.hasOption("node-resolution"))
+				conversionOptions.setNodeResolution(ConversionOptions.parseEnum(ConversionOptions.NodeResolution.class,
+						cmd.getOptionValue("node-resolution")));
+			if (cmd.hasOption("node-label"))
+				conversionOptions.setLabelChoice(ConversionOptions.parseEnum(ConversionOptions.LabelChoice.class,
+						cmd.getOptionValue("node-label")));
+			if (cmd.hasOption("node-sort-memory"))
+				conversionOptions.setNodeSortMemoryBudget(
+						ConversionOptions.parseByteSize(cmd.getOptionValue("node-sort-memory")));
+			conversionOptions.setAggregateMappings(cmd.hasOption("aggregate-mappings"));
+			if (cmd.hasOption("aggregate-memory"))
+				conversionOptions.setAggregateMemoryBudget(
+						ConversionOptions.parseByteSize(cmd.getOptionValue("aggregate-memory")));
+			conversionOptions.setNormalizedEdges(cmd.hasOption("normalized-edges"));
+			if (cmd.hasOption("spill-dir"))
+				conversionOptions.setSpillDir(Path.of(cmd.getOptionValue("spill-dir")));
+			if (cmd.hasOption("checkpoint-dir"))
+				conversionOptions.setCheckpointDir(Path.of(cmd.getOptionValue("checkpoint-dir")));
+			if (cmd.hasOption("checkpoint-interval"))
+				conversionOptions.setCheckpointInterval(
+						ConversionOptions.parseDuration(cmd.getOptionValue("checkpoint-interval")));
+			conversionOptions.setResume(cmd.hasOption("resume"));
+			if (cmd.hasOption("ols-cache-dir"))
+				olsCacheTtl = ConversionOptions.parseDuration(cmd.getOptionValue("ols-cache-ttl", "1d"));
+			conversionOptions.validate();
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			formatter.printHelp("oxo1-sssom2neo", options);
+
+			System.exit(1);
+			return;
+		}
 
 		System.out.println("inputPath = " + inputPath);
 		System.out.println("olsUlr = " + olsUlr);
@@ -77,27 +269,33 @@ public class Oxo1SSSOM2Neo {
 		System.out.println("outputNodesPath = " + outputNodesPath);
 		System.out.println("outputEdgesPath = " + outputEdgesPath);
 
-		// Todo - Get ontologies from OLS
-		Map<String, Datasources.Datasource> olsDatasources =
-				Datasources.getAndGenerateOLSDatasourcesCSV(olsUlr, outputDatasources);
-
-		if(inputPath.toFile().isDirectory()) {
-			generateNeo4JNodesAndEdgesCSV(
-				Arrays.stream(inputPath.toFile().listFiles())
-				.filter(file -> file.getName().endsWith(".tsv"))
-				.collect(Collectors.toList()),
-				outputNodesPath,
-				outputEdgesPath,
-				olsDatasources
-			);
-		}  else {
-			generateNeo4JNodesAndEdgesCSV(
-				List.of(inputPath.toFile()),
-				outputNodesPath,
-				outputEdgesPath,
-				olsDatasources
-			);
+		OLSOntologiesFetcher olsFetcher = new OLSOntologiesFetcher(olsUlr).setOffline(cmd.hasOption("offline"));
+		if (cmd.hasOption("ols-cache-dir"))
+			olsFetcher.setCache(Path.of(cmd.getOptionValue("ols-cache-dir")), olsCacheTtl);
+
+		List<File> sssomInputFiles = inputPath.toFile().isDirectory()
+				? Arrays.stream(inputPath.toFile().listFiles())
+						.filter(CompressedFiles::isSSSOMFile)
+						.collect(Collectors.toList())
+				: List.of(inputPath.toFile());
+
+		Map<String, Datasources.Datasource> olsDatasources;
+		if (conversionOptions.isNormalizedEdges()) {
+			// the mappings only have the datasource prefix, so every prefix they use must be in the datasources file
+			olsDatasources = olsFetcher.fetch();
+			Datasources.addSSSOMFileDatasources(olsDatasources, sssomInputFiles);
+			Datasources.generateDatasourcesCSV(olsDatasources, outputDatasources);
+		} else {
+			olsDatasources = Datasources.getAndGenerateOLSDatasourcesCSV(olsFetcher, outputDatasources);
 		}
+
+		generateNeo4JNodesAndEdgesCSV(
+			sssomInputFiles,
+			outputNodesPath,
+			outputEdgesPath,
+			olsDatasources,
+			conversionOptions
+		);
     }
 
     public static void generateNeo4JNodesAndEdgesCSV(Collection<File> sssomInputFiles,
@@ -105,196 +303,251 @@ public class Oxo1SSSOM2Neo {
 													 Path outputEdgesPath,
 													 Map<String, Datasources.Datasource> datasources)
 			throws IOException {
+		generateNeo4JNodesAndEdgesCSV(sssomInputFiles, outputNodesPath, outputEdgesPath, datasources,
+				new ConversionOptions());
+	}
 
-		System.out.println("printMappings for sssomInputFiles");
-
-		Map<String, String> prefixToUriMap = new HashMap<>();
+    public static void generateNeo4JNodesAndEdgesCSV(Collection<File> sssomInputFiles,
+													 Path outputNodesPath,
+													 Path outputEdgesPath,
+													 Map<String, Datasources.Datasource> datasources,
+													 ConversionOptions conversionOptions)
+			throws IOException {
 
-		var nodesPrinter = CSVFormat.POSTGRESQL_CSV.withHeader(TermHeader.asListOfString().toArray(new String[0])).print(
-				outputNodesPath.toFile(), Charset.defaultCharset());
+		conversionOptions.validate();
 
-		var edgesPrinter = CSVFormat.POSTGRESQL_CSV
-				.withHeader(MappingHeader.asSetOfString().toArray(new String[0])).print(
-						outputEdgesPath.toFile(), Charset.defaultCharset());
+		System.out.println("printMappings for sssomInputFiles");
 
-		var printedNodeIds = new HashSet<String>(); 
-		var nodeIdsToPrint = new HashSet<String>(); // nodes we need to print but didn't get a label for yet
+		DatasourceRegistry datasourceRegistry = DatasourceRegistry.of(datasources);
+		PrefixResolver prefixes = new PrefixResolver(datasourceRegistry);
+
+		// nodes printed so far, plus the nodes we need to print but didn't get a label for yet
+		NodeIdStore nodeIds = new NodeIdStore(conversionOptions.isNodeStoreOffHeap(),
+				conversionOptions.getNodeStoreMemoryBudget());
+
+		// a resumed run starts with the state of its checkpoint, and appends to the outputs
+		Checkpoint checkpoint = conversionOptions.getCheckpointDir() == null ? null
+				: Checkpoint.open(conversionOptions, datasourceRegistry, List.of(outputNodesPath, outputEdgesPath));
+		List<File> inputFiles = new ArrayList<>(sssomInputFiles);
+		Checkpoint.State resumed = checkpoint == null ? null
+				: checkpoint.start(inputFiles, conversionOptions.isResume());
+		if (resumed != null)
+			checkpoint.restore(resumed, nodeIds, prefixes);
+		int filesDone = resumed != null ? resumed.files.size() : 0;
+		List<File> remainingFiles = inputFiles.subList(filesDone, inputFiles.size());
+
+		boolean aggregated = conversionOptions.isAggregateMappings();
+		MappingHeader[] mappingColumns = conversionOptions.getMappingColumns();
+		GraphOutput graphOutput = conversionOptions.getBulkImportDir() != null
+				? new BulkImportGraphOutput(conversionOptions.getBulkImportDir(), datasourceRegistry, nodeIds,
+						conversionOptions.getCompressionThreads(), mappingColumns, aggregated)
+				: conversionOptions.getShards() > 1
+				? new ShardedGraphOutput(outputNodesPath, outputEdgesPath, conversionOptions.getShards(),
+						conversionOptions.getCompressionThreads(), mappingColumns, aggregated)
+				: new CsvGraphOutput(outputNodesPath, outputEdgesPath, conversionOptions.getCompressionThreads(),
+						mappingColumns, aggregated, resumed != null);
+		if (conversionOptions.getSolrDir() != null)
+			graphOutput = new SolrGraphOutput(graphOutput, conversionOptions.getSolrDir(),
+					conversionOptions.getSolrChunkSize(), conversionOptions.getSolrUrl());
+		if (conversionOptions.getNeo4jConfig() != null)
+			graphOutput = new Neo4jGraphOutput(graphOutput,
+					Neo4jGraphOutput.connect(conversionOptions.getNeo4jConfig(), conversionOptions.getNeo4jParallelism(),
+							conversionOptions.isNeo4jEncrypted()),
+					datasourceRegistry, conversionOptions.getSpillDir(), conversionOptions.getNeo4jBatchSize(),
+					conversionOptions.getNeo4jParallelism(), conversionOptions.isNeo4jWipe(),
+					conversionOptions.getNeo4jWipeBatchSize());
+		GraphOutput output = aggregated
+				? new AggregatingGraphOutput(graphOutput, conversionOptions.getSpillDir(),
+						conversionOptions.getAggregateMemoryBudget())
+				: graphOutput;
+
+		String date = resumed != null ? resumed.date : LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+
+		IncrementalBuild incremental = conversionOptions.getManifestDir() == null ? null :
+				IncrementalBuild.open(conversionOptions.getManifestDir(), conversionOptions.getDeltaDir(), conversionOptions);
+
+		// replaces the NodeIdStore, which then stays empty
+		SortedNodeResolver sortedNodes = conversionOptions.getNodeResolution() == ConversionOptions.NodeResolution.SORTED
+				? new SortedNodeResolver(conversionOptions.getSpillDir(), conversionOptions.getNodeSortMemoryBudget(),
+						conversionOptions.getLabelChoice())
+				: null;
+
+		ConversionMetrics metrics = new ConversionMetrics(remainingFiles.size(), nodeIds);
+		metrics.startProgress(conversionOptions.getProgressInterval());
+
+		ExecutorService readers = Executors.newFixedThreadPool(conversionOptions.getThreads(), runnable -> {
+			Thread thread = new Thread(runnable, "sssom-reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		List<MappingBatchTask> tasks = new ArrayList<>();
+		try {
+			// the pool runs the files in submission order, so the file being written is always being read too
+			for(var sssomFile : remainingFiles) {
+				Predicate<String> isKnownNode = sortedNodes != null ? nodeId -> false : nodeIds::contains;
+				MappingBatchTask task = incremental != null
+						? incremental.taskFor(sssomFile, conversionOptions.getProjection(), datasourceRegistry, date)
+						: conversionOptions.getSnapshotDir() != null
+						? new SnapshotFileTask(sssomFile, conversionOptions.getProjection(), datasourceRegistry, date,
+								mappingColumns, isKnownNode, conversionOptions.getSnapshotDir())
+						: new SSSOMFileTask(sssomFile, conversionOptions.getProjection(), datasourceRegistry, date,
+								mappingColumns, isKnownNode);
+				tasks.add(task);
+				readers.execute(task);
+			}
 
-		for(var sssomFile : sssomInputFiles) {
-			writeMappings(sssomFile, nodesPrinter, edgesPrinter, printedNodeIds, nodeIdsToPrint, prefixToUriMap, datasources);
+			Iterator<File> files = remainingFiles.iterator();
+			for(var task : tasks) {
+				metrics.startFile(files.next());
+				MappingBatch batch;
+				do {
+					batch = task.take();
+					long nodesBefore = nodeIds.size();
+					if (sortedNodes != null)
+						writeMappings(batch, output, sortedNodes, prefixes);
+					else
+						writeMappings(batch, output, nodeIds, prefixes);
+					metrics.batchWritten(batch, nodeIds.size() - nodesBefore);
+				} while (!batch.last);
+				metrics.finishFile(task);
+				filesDone++;
+				// checkpoints are only taken of the CSV outputs, which are not wrapped then
+				if (checkpoint != null && files.hasNext() && checkpoint.isDue())
+					checkpoint.take(inputFiles.subList(0, filesDone), date, (CsvGraphOutput)output, nodeIds,
+							prefixes);
+			}
+		} catch (IOException | RuntimeException e) {
+			metrics.stopProgress();
+			if (sortedNodes != null)
+				sortedNodes.close();
+			throw e;
+		} finally {
+			readers.shutdownNow();
 		}
 
-		// leftover = nodes without labels
-		for(var leftoverNodeId : nodeIdsToPrint) {
-			printNode(leftoverNodeId, leftoverNodeId, nodesPrinter, prefixToUriMap);
+		if (sortedNodes != null) {
+			try (sortedNodes) {
+				sortedNodes.resolve((nodeId, nodeLabel) -> output.writeTerm(nodeId, nodeLabel, prefixes));
+			}
+			metrics.nodesResolved(sortedNodes.getNodes(), sortedNodes.getNodesWithoutLabel());
+		} else {
+			// leftover = nodes without labels
+			nodeIds.forEachPending(leftoverNodeId -> output.writeTerm(leftoverNodeId, leftoverNodeId, prefixes));
 		}
 
-		nodesPrinter.close(true);
-		edgesPrinter.close(true);
-    }
+		output.close();
 
-	public static Map<String, Object> getYamlHeader(File file) throws IOException {
-		String yamlCommentsAsString = getCommentsFromCSVAsYaml(file);
+		if (checkpoint != null)
+			checkpoint.finish();
 
-		Yaml yaml = new Yaml();
-		Map<String, Object> yamlHeaderMap = yaml.load(yamlCommentsAsString);
+		if (incremental != null)
+			incremental.finish(datasourceRegistry, date);
+		if (conversionOptions.getSnapshotDir() != null) {
+			long replayed = tasks.stream().filter(task -> ((SnapshotFileTask)task).isReplayed()).count();
+			System.out.println("snapshots: read " + replayed + " of " + tasks.size() + " files from their snapshot");
+		}
 
-		return yamlHeaderMap;
-	}
+		ConversionMetrics.RunReport report = metrics.finish(prefixes);
+		if (conversionOptions.getReportPath() != null)
+			ConversionMetrics.writeReport(report, conversionOptions.getReportPath());
+    }
 
-	private static String getCommentsFromCSVAsYaml(File file) throws IOException {
-		StringBuilder stringBuilder = new StringBuilder();
-		FileInputStream fileInputStream = null;
-		Scanner scanner = null;
-		try {
-			fileInputStream = new FileInputStream(file);
-			scanner = new Scanner(fileInputStream, "UTF-8");
-			String line = "# ";
-			while (scanner.hasNextLine() && line.startsWith("# ")) {
-				if (line.length() > 2) {
-					stringBuilder.append(line.substring(2));
-					stringBuilder.append("\n");
-				}
-				line = scanner.nextLine();
-			}
-			// note that Scanner suppresses exceptions
-			if (scanner.ioException() != null) {
-				throw scanner.ioException();
-			}
-		} finally {
-			if (fileInputStream != null) {
-				fileInputStream.close();
-			}
-			if (scanner != null) {
-				scanner.close();
-			}
+	public static Map<String, Object> getYamlHeader(File file) throws IOException {
+		try (SSSOMReader sssomReader = new SSSOMReader(file)) {
+			return sssomReader.getYamlHeader();
 		}
-		return stringBuilder.toString();
 	}
 
-	public static void writeMappings(File sssomFile, CSVPrinter nodesPrinter, CSVPrinter edgesPrinter, Set<String> printedNodeIds,
-									 Set<String> nodeIdsToPrint, Map<String, String> prefixToUriMap,
-									 Map<String, Datasources.Datasource> datasources) throws IOException {
-
-		Map<String, Object> yamlHeader = getYamlHeader(sssomFile);
-		prefixToUriMap.putAll((Map<String, String>)yamlHeader.get("curie_map"));
-
-
-		CSVParser sssomParser = new CSVParser(new FileReader(sssomFile), CSVFormat.TDF.builder().setCommentMarker('#').setHeader().build());
-
-		Gson gson = new Gson();
-
-		for(CSVRecord sssomRecord : sssomParser) {
-			Map<String,String> recordMap = sssomRecord.toMap();
-
-			String subjId = recordMap.get("subject_id");
-			String subjLabel = recordMap.get("subject_label");
-			String objId = recordMap.get("object_id");
-			String objLabel = recordMap.get("object_label");
-
-			addNode(subjId, subjLabel, nodesPrinter, printedNodeIds, nodeIdsToPrint, prefixToUriMap);
-			addNode(objId, objLabel, nodesPrinter, printedNodeIds, nodeIdsToPrint, prefixToUriMap);
-
-			String[] row = new String[MappingHeader.asSetOfString().size()];
-
-			int col = 0;
-
-			for(MappingHeader header : MappingHeader.values())  {
-				if(header.equals(MappingHeader.FROM_CURIE)) {
-					row[col++] = sssomRecord.get("subject_id");
-					continue;
-				}
-				if(header.equals(MappingHeader.TO_CURIE)) {
-					row[col++] = sssomRecord.get("object_id");
-					continue;
-				}
-				if (header.equals(MappingHeader.DATASOURCE_PREFIX)) {
-					String localName = (String)yamlHeader.get("local_name");
-					row[col++] = localName.substring(0, localName.indexOf('.')).toUpperCase();
-					continue;
-				}
-				if (header.equals(MappingHeader.DATASOURCE)) {
-					String localName = (String)yamlHeader.get("local_name");
-					String datasourcePrefix = localName.substring(0, localName.indexOf('.'));
-					Datasources.Datasource datasource = datasources.get(datasourcePrefix.toUpperCase());
-					if (datasource != null ) {
-						String json = gson.toJson(datasource);
-						row[col++] = json;
-					} else {
-						Datasources.Datasource datasource1 = new Datasources.Datasource(datasourcePrefix, "DATABASE");
-						String json = gson.toJson(datasource1);
-						row[col++] = json;
-					}
-					continue;
-				}
-				if (header.equals(MappingHeader.SOURCE_TYPE)) {
-					row[col++] = "ONTOLOGY";
-					continue;
-				}
-				if (header.equals(MappingHeader.SCOPE)) {
-					row[col++] = "RELATED";
-					continue;
-				}
-				if (header.equals(MappingHeader.DATE)) {
-
-					row[col++] = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
-				}
-			}
+	public static void writeMappings(MappingBatch batch, GraphOutput output, NodeIdStore nodeIds,
+									 PrefixResolver prefixes) throws IOException {
 
-			edgesPrinter.printRecord((Object[])row);
+		if (batch.yamlHeader != null)
+			prefixes.addCurieMap((Map<?, ?>)batch.yamlHeader.get("curie_map"));
+
+		for (int i = 0; i < batch.nodeCount; i++) {
+			addNode(batch.nodeIds[i], batch.nodeLabels[i], output, nodeIds, prefixes);
 		}
 
+		for (int i = 0; i < batch.edgeCount; i++) {
+			output.writeMapping(batch.rowPlan, batch.edgeFromIds[i], batch.edgeToIds[i]);
+		}
     }
 
-    public static void addNode(String nodeId, String nodeLabel, CSVPrinter nodesPrinter, Set<String> printedNodeIds,
-							   Set<String> nodeIdsToPrint, Map<String, String> prefixToUriMap) throws IOException {
+	// Like writeMappings, but the nodes are only collected, to be printed once all their labels are known.
+	static void writeMappings(MappingBatch batch, GraphOutput output, SortedNodeResolver sortedNodes,
+							  PrefixResolver prefixes) throws IOException {
 
-		if(printedNodeIds.contains(nodeId) || nodeIdsToPrint.contains(nodeId)) {
-			return;
+		if (batch.yamlHeader != null)
+			prefixes.addCurieMap((Map<?, ?>)batch.yamlHeader.get("curie_map"));
+
+		for (int i = 0; i < batch.nodeCount; i++) {
+			sortedNodes.add(batch.nodeIds[i], batch.nodeLabels[i]);
 		}
 
-		if(nodeLabel == null || nodeLabel.length() == 0) {
-			nodeIdsToPrint.add(nodeId);
-			return;
+		for (int i = 0; i < batch.edgeCount; i++) {
+			output.writeMapping(batch.rowPlan, batch.edgeFromIds[i], batch.edgeToIds[i]);
 		}
+	}
 
-		nodeIdsToPrint.remove(nodeId);
-		printedNodeIds.add(nodeId);
+    public static void addNode(String nodeId, String nodeLabel, GraphOutput output, NodeIdStore nodeIds,
+							   PrefixResolver prefixes) throws IOException {
+
+		boolean hasLabel = nodeLabel != null && nodeLabel.length() > 0;
+
+		if(!nodeIds.add(nodeId, !hasLabel) || !hasLabel) {
+			return;
+		}
 
-		printNode(nodeId, nodeLabel, nodesPrinter, prefixToUriMap);
+		output.writeTerm(nodeId, nodeLabel, prefixes);
     }
 
-    public static void printNode(String nodeId, String nodeLabel, CSVPrinter nodesPrinter, Map<String, String> prefixToUriMap)
+    public static void printNode(String nodeId, String nodeLabel, CSVPrinter nodesPrinter, PrefixResolver prefixes)
 			throws IOException {
-		String curiePrefix = nodeId.substring(0, nodeId.indexOf(":"));
-		String curieLocalPart = nodeId.substring(nodeId.indexOf(":")+1);
-		String uri = findUri(prefixToUriMap, curieLocalPart, curiePrefix);
-
-		nodesPrinter.printRecord(List.of(curieLocalPart, nodeId, nodeLabel, uri, curiePrefix));
+		nodesPrinter.printRecord(termRow(nodeId, nodeLabel, prefixes));
     }
 
-	private static String findUri(Map<String, String> prefixToUriMap, String curieLocalPart, String curiePrefix) {
-		if (prefixToUriMap.containsKey(curiePrefix))
-			return prefixToUriMap.get(curiePrefix) + curieLocalPart;
-		else if (prefixToUriMap.containsKey(curiePrefix.toUpperCase())){
-			String uri = prefixToUriMap.get(curiePrefix.toUpperCase());
-			prefixToUriMap.put(curiePrefix.toUpperCase(), uri);
-			return uri;
-		}
-		return "";
+	// The TermHeader columns printed for a node.
+	static List<String> termRow(String nodeId, String nodeLabel, PrefixResolver prefixes) {
+		return termRow(nodeId, nodeLabel, termUri(nodeId, prefixes), termPrefix(nodeId, prefixes));
+	}
+
+	static List<String> termRow(String nodeId, String nodeLabel, String uri, String prefix) {
+		int colon = nodeId.indexOf(":");
+		String curieLocalPart = nodeId.substring(colon+1);
+
+		return List.of(curieLocalPart, nodeId, nodeLabel, uri, prefix);
+	}
+
+	// The preferred prefix of the datasource of a node, or its CURIE prefix if it has none.
+	static String termPrefix(String nodeId, PrefixResolver prefixes) {
+		return prefixes.findDatasourcePrefix(nodeId, nodeId.indexOf(":"));
+	}
+
+	// The URI of a node from the curie_maps merged so far, or an empty string.
+	static String termUri(String nodeId, PrefixResolver prefixes) {
+		int colon = nodeId.indexOf(":");
+		String baseUri = prefixes.findBaseUri(nodeId, colon);
+		return baseUri != null ? baseUri + nodeId.substring(colon+1) : "";
 	}
 
 	enum TermHeader {
-		IDENTIFIER("identifier"),
-		CURIE("curie"),
-		LABEL("label"),
-		URI("uri"),
-		PREFIX("prefix");
+		IDENTIFIER("identifier", "subject_id", "object_id"),
+		CURIE("curie", "subject_id", "object_id"),
+		LABEL("label", "subject_label", "object_label"),
+		URI("uri", "subject_id", "object_id"),
+		PREFIX("prefix", "subject_id", "object_id");
 
-		TermHeader(String value) {
+		TermHeader(String value, String... sssomColumns) {
 			this.value = value;
+			this.sssomColumns = sssomColumns;
 		}
 		private final String value;
+		private final String[] sssomColumns; // the SSSOM columns the value is made from
+
+		public String[] getSssomColumns() {
+			return sssomColumns;
+		}
 
 		static List<String> asListOfString() {
 			List<String> listOfString = new LinkedList<>();
@@ -305,26 +558,44 @@ public class Oxo1SSSOM2Neo {
 	}
 
 	enum MappingHeader {
-		FROM_CURIE("fromCurie"),
-		TO_CURIE("toCurie"),
+		FROM_CURIE("fromCurie", "subject_id"),
+		TO_CURIE("toCurie", "object_id"),
 		DATASOURCE_PREFIX("datasourcePrefix"),
 		DATASOURCE("datasource"),
 		SOURCE_TYPE("sourceType"),
 		SCOPE("scope"),
 		DATE("date");
 
-		MappingHeader(String value) {
+		MappingHeader(String value, String... sssomColumns) {
 			this.value = value;
+			this.sssomColumns = sssomColumns;
 		}
 		private final String value;
+		private final String[] sssomColumns; // the SSSOM columns the value is made from
+
+		public String[] getSssomColumns() {
+			return sssomColumns;
+		}
 
 		static Set<String> asSetOfString() {
+			return asSetOfString(MappingHeader.values());
+		}
+
+		static Set<String> asSetOfString(MappingHeader[] columns) {
 			Set<String> setOfString = new LinkedHashSet<>();
-			Arrays.asList(MappingHeader.values())
+			Arrays.asList(columns)
 					.forEach(term -> setOfString.add(term.value));
 			return setOfString;
 		}
 
+		// The columns of the mappings output. Normalized edges leave out the datasource JSON, which is the same for
+		// every mapping of a datasource prefix, and is in the datasources file.
+		static MappingHeader[] columns(boolean normalized) {
+			return normalized
+					? EnumSet.complementOf(EnumSet.of(DATASOURCE)).toArray(new MappingHeader[0])
+					: MappingHeader.values();
+		}
+
 		public String getValue() {
 			return value;
 		}
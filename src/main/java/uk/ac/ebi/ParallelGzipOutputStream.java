@@ -0,0 +1,105 @@
+package uk.ac.ebi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+// Gzip output compressed on several threads, the way pigz does it: the data is cut into blocks, every block is
+// compressed on its own into a complete gzip member and the members are written in order. A gzip stream of several
+// members is still a valid gzip file, which GZIPInputStream, gunzip and Neo4j's LOAD CSV all read as one.
+class ParallelGzipOutputStream extends OutputStream {
+
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final OutputStream out;
+	private final ExecutorService compressors;
+	private final int maxPending;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int blockLength;
+	private boolean closed;
+
+	ParallelGzipOutputStream(OutputStream out, ExecutorService compressors, int threads) {
+		this.out = out;
+		this.compressors = compressors;
+		this.maxPending = threads * 2;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (blockLength == block.length)
+			submitBlock();
+		block[blockLength++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (blockLength == block.length)
+				submitBlock();
+			int copied = Math.min(length, block.length - blockLength);
+			System.arraycopy(bytes, offset, block, blockLength, copied);
+			blockLength += copied;
+			offset += copied;
+			length -= copied;
+		}
+	}
+
+	// Ends the current gzip member, so everything written so far is in the underlying stream as complete members.
+	@Override
+	public void flush() throws IOException {
+		if (blockLength > 0)
+			submitBlock();
+		while (!pending.isEmpty())
+			writeOldest();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		byte[] data = Arrays.copyOf(block, blockLength);
+		blockLength = 0;
+		pending.add(compressors.submit(() -> compress(data)));
+		while (pending.size() > maxPending)
+			writeOldest();
+	}
+
+	private void writeOldest() throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing");
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress block", e.getCause());
+		}
+	}
+
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream member = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(member, 64 * 1024)) {
+			gzip.write(data);
+		}
+		return member.toByteArray();
+	}
+}
@@ -0,0 +1,162 @@
+package uk.ac.ebi;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Resolves CURIE prefixes to base URIs, from the curie_maps of the SSSOM files merged so far. A prefix is looked up as
+// it is first, and then case-folded against the prefixes of the curie_maps that are all upper case, so hp:0000001
+// resolves with an HP entry. Both lookups go through open-addressing tables built whenever a curie_map changes the
+// merged map, and compare the prefix in place in the CURIE, so resolving a prefix does not allocate. Prefixes are also
+// resolved to the preferred prefix of their datasource, through the DatasourceRegistry of the conversion.
+//
+// The tables are immutable and swapped as a whole, so any thread can resolve prefixes while another one adds a
+// curie_map. The counters show how prefixes were resolved, and which ones were not.
+public class PrefixResolver {
+
+	private final DatasourceRegistry datasources;
+	private final Map<String, String> prefixToUriMap = new HashMap<>();
+	private volatile Index index = new Index(new HashMap<>());
+
+	private final LongAdder exactHits = new LongAdder();
+	private final LongAdder foldedHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final Map<String, LongAdder> missesByPrefix = new ConcurrentHashMap<>();
+
+	public PrefixResolver() {
+		this(DatasourceRegistry.empty());
+	}
+
+	PrefixResolver(DatasourceRegistry datasources) {
+		this.datasources = datasources;
+	}
+
+	// Adds the entries of a curie_map, replacing those of earlier ones for the same prefix.
+	public synchronized void addCurieMap(Map<?, ?> curieMap) {
+		if (curieMap == null)
+			return;
+		boolean changed = false;
+		for (Map.Entry<?, ?> entry : curieMap.entrySet()) {
+			String prefix = String.valueOf(entry.getKey());
+			String uri = String.valueOf(entry.getValue());
+			if (!uri.equals(prefixToUriMap.put(prefix, uri)))
+				changed = true;
+		}
+		if (changed)
+			index = new Index(prefixToUriMap);
+	}
+
+	// The curie_maps added so far, merged, to be added back to another resolver.
+	public synchronized Map<String, String> getCurieMap() {
+		return new HashMap<>(prefixToUriMap);
+	}
+
+	// Returns the base URI of the prefix made of the first prefixEnd characters of the CURIE, or null.
+	public String findBaseUri(String curie, int prefixEnd) {
+		Index index = this.index;
+		String uri = index.findExact(curie, prefixEnd);
+		if (uri != null) {
+			exactHits.increment();
+			return uri;
+		}
+		uri = index.findFolded(curie, prefixEnd);
+		if (uri != null) {
+			foldedHits.increment();
+			return uri;
+		}
+		misses.increment();
+		missesByPrefix.computeIfAbsent(curie.substring(0, prefixEnd), prefix -> new LongAdder()).increment();
+		return null;
+	}
+
+	// The preferred prefix of the datasource of the first prefixEnd characters of the CURIE, which may be any of its
+	// prefixes in any case, or those characters as they are if they are not a datasource's.
+	public String findDatasourcePrefix(String curie, int prefixEnd) {
+		return datasources.canonicalPrefix(curie, prefixEnd);
+	}
+
+	public long getExactHits() {
+		return exactHits.sum();
+	}
+
+	public long getFoldedHits() {
+		return foldedHits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	// The prefixes that did not resolve, most frequent first.
+	public Map<String, Long> getMissesByPrefix() {
+		Map<String, Long> sorted = new LinkedHashMap<>();
+		missesByPrefix.entrySet().stream()
+				.sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+				.forEach(entry -> sorted.put(entry.getKey(), entry.getValue().sum()));
+		return sorted;
+	}
+
+	private static final class Index {
+		final String[] exactKeys;
+		final String[] exactUris;
+		final String[] foldedKeys;
+		final String[] foldedUris;
+
+		Index(Map<String, String> prefixToUriMap) {
+			int capacity = Integer.highestOneBit(Math.max(prefixToUriMap.size(), 4) * 2) * 2;
+			exactKeys = new String[capacity];
+			exactUris = new String[capacity];
+			foldedKeys = new String[capacity];
+			foldedUris = new String[capacity];
+			for (Map.Entry<String, String> entry : prefixToUriMap.entrySet()) {
+				String prefix = entry.getKey();
+				insert(exactKeys, exactUris, hash(prefix, prefix.length(), false), prefix, entry.getValue());
+				if (prefix.equals(prefix.toUpperCase(Locale.ROOT)))
+					insert(foldedKeys, foldedUris, hash(prefix, prefix.length(), true), prefix, entry.getValue());
+			}
+		}
+
+		String findExact(String curie, int prefixEnd) {
+			int mask = exactKeys.length - 1;
+			int slot = hash(curie, prefixEnd, false) & mask;
+			String key;
+			while ((key = exactKeys[slot]) != null) {
+				if (key.length() == prefixEnd && curie.regionMatches(0, key, 0, prefixEnd))
+					return exactUris[slot];
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		String findFolded(String curie, int prefixEnd) {
+			int mask = foldedKeys.length - 1;
+			int slot = hash(curie, prefixEnd, true) & mask;
+			String key;
+			while ((key = foldedKeys[slot]) != null) {
+				if (key.length() == prefixEnd && curie.regionMatches(true, 0, key, 0, prefixEnd))
+					return foldedUris[slot];
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private static void insert(String[] keys, String[] uris, int hash, String key, String uri) {
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			while (keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = key;
+			uris[slot] = uri;
+		}
+
+		private static int hash(String s, int end, boolean fold) {
+			int h = 0;
+			for (int i = 0; i < end; i++)
+				h = 31 * h + (fold ? Character.toUpperCase(s.charAt(i)) : s.charAt(i));
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package uk.ac.ebi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.google.gson.Gson;
+
+// Reads one SSSOM file on a worker thread and queues its rows as batches.
+class SSSOMFileTask extends MappingBatchTask {
+
+	protected final File sssomFile;
+	protected final SSSOMProjection projection;
+	protected final DatasourceRegistry datasources;
+	protected final String date;
+	protected final Oxo1SSSOM2Neo.MappingHeader[] mappingColumns;
+	protected final Predicate<String> isKnownNode;
+
+	SSSOMFileTask(File sssomFile, SSSOMProjection projection, DatasourceRegistry datasources,
+				  String date, Predicate<String> isKnownNode) {
+		this(sssomFile, projection, datasources, date, Oxo1SSSOM2Neo.MappingHeader.values(), isKnownNode);
+	}
+
+	SSSOMFileTask(File sssomFile, SSSOMProjection projection, DatasourceRegistry datasources,
+				  String date, Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, Predicate<String> isKnownNode) {
+		this.sssomFile = sssomFile;
+		this.projection = projection;
+		this.datasources = datasources;
+		this.date = date;
+		this.mappingColumns = mappingColumns;
+		this.isKnownNode = isKnownNode;
+	}
+
+	File getSssomFile() {
+		return sssomFile;
+	}
+
+	@Override
+	protected String describe() {
+		return sssomFile.toString();
+	}
+
+	protected SSSOMReader openReader() throws IOException {
+		return new SSSOMReader(sssomFile, projection);
+	}
+
+	@Override
+	protected void readBatches() throws IOException, InterruptedException {
+		try (SSSOMReader sssomReader = openReader()) {
+			Map<String, Object> yamlHeader = sssomReader.getYamlHeader();
+			EdgeRowPlan rowPlan = EdgeRowPlan.compile(yamlHeader, datasources, date, Oxo1SSSOM2Neo.CSV_FORMAT,
+					new Gson(), mappingColumns);
+
+			int subjIdColumn = sssomReader.getColumnIndex("subject_id");
+			int subjLabelColumn = sssomReader.getColumnIndex("subject_label");
+			int objIdColumn = sssomReader.getColumnIndex("object_id");
+			int objLabelColumn = sssomReader.getColumnIndex("object_label");
+
+			MappingBatch batch = new MappingBatch();
+			batch.yamlHeader = yamlHeader;
+			batch.rowPlan = rowPlan;
+
+			while (sssomReader.next()) {
+				String subjId = sssomReader.get(subjIdColumn);
+				String objId = sssomReader.get(objIdColumn);
+
+				// a node seen by the writer already would be ignored there, so it is not worth queueing
+				if (!isKnownNode.test(subjId))
+					batch.addNode(subjId, sssomReader.get(subjLabelColumn));
+				else
+					batch.knownNodes++;
+				if (!isKnownNode.test(objId))
+					batch.addNode(objId, sssomReader.get(objLabelColumn));
+				else
+					batch.knownNodes++;
+
+				batch.addEdge(subjId, objId);
+
+				if (batch.isFull()) {
+					put(batch);
+					batch = new MappingBatch();
+					batch.rowPlan = rowPlan;
+				}
+			}
+
+			batch.last = true;
+			put(batch);
+		}
+	}
+}
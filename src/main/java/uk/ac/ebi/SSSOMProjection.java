@@ -0,0 +1,106 @@
+package uk.ac.ebi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// The SSSOM columns a conversion needs, and the rows it wants. SSSOMReader only keeps the offsets of these columns
+// and drops rows failing the filters before anything is decoded.
+public class SSSOMProjection {
+
+	static final String SUBJECT_ID = "subject_id";
+	static final String OBJECT_ID = "object_id";
+	static final String CONFIDENCE = "confidence";
+
+	private final Set<String> columns = new LinkedHashSet<>();
+	private byte[][] includedPrefixes; // upper case, null means every prefix
+	private double minConfidence = Double.NaN;
+
+	// Every column of the file, as before projections existed.
+	public static SSSOMProjection all() {
+		return new SSSOMProjection();
+	}
+
+	// The columns read by the terms and mappings outputs.
+	public static SSSOMProjection forOutputs() {
+		SSSOMProjection projection = new SSSOMProjection();
+		for (Oxo1SSSOM2Neo.TermHeader header : Oxo1SSSOM2Neo.TermHeader.values())
+			projection.addColumns(header.getSssomColumns());
+		for (Oxo1SSSOM2Neo.MappingHeader header : Oxo1SSSOM2Neo.MappingHeader.values())
+			projection.addColumns(header.getSssomColumns());
+		return projection;
+	}
+
+	public SSSOMProjection addColumns(String... sssomColumns) {
+		for (String column : sssomColumns)
+			columns.add(column);
+		return this;
+	}
+
+	// Keeps only rows whose subject or object prefix is one of these, ignoring case.
+	public SSSOMProjection withIncludedPrefixes(Collection<String> prefixes) {
+		includedPrefixes = new byte[prefixes.size()][];
+		int i = 0;
+		for (String prefix : prefixes)
+			includedPrefixes[i++] = prefix.toUpperCase().getBytes(StandardCharsets.UTF_8);
+		addColumns(SUBJECT_ID, OBJECT_ID);
+		return this;
+	}
+
+	// Keeps only rows with at least this confidence. Rows without a confidence are kept.
+	public SSSOMProjection withMinConfidence(double minConfidence) {
+		this.minConfidence = minConfidence;
+		addColumns(CONFIDENCE);
+		return this;
+	}
+
+	boolean isAll() {
+		return columns.isEmpty();
+	}
+
+	boolean includes(String column) {
+		return columns.isEmpty() || columns.contains(column);
+	}
+
+	boolean hasPrefixFilter() {
+		return includedPrefixes != null;
+	}
+
+	boolean hasConfidenceFilter() {
+		return !Double.isNaN(minConfidence);
+	}
+
+	double getMinConfidence() {
+		return minConfidence;
+	}
+
+	// Whether the CURIE in bytes[start, end) has one of the included prefixes.
+	boolean isIncludedPrefix(byte[] bytes, int start, int end) {
+		int colon = start;
+		while (colon < end && bytes[colon] != ':')
+			colon++;
+		if (colon == end)
+			return false;
+		for (byte[] prefix : includedPrefixes) {
+			if (prefix.length != colon - start)
+				continue;
+			int i = 0;
+			while (i < prefix.length && upperCase(bytes[start + i]) == prefix[i])
+				i++;
+			if (i == prefix.length)
+				return true;
+		}
+		return false;
+	}
+
+	// Whether CURIEs with this prefix have one of the included prefixes.
+	boolean isIncludedPrefix(String prefix) {
+		byte[] bytes = (prefix + ':').getBytes(StandardCharsets.UTF_8);
+		return isIncludedPrefix(bytes, 0, bytes.length);
+	}
+
+	private static byte upperCase(byte b) {
+		return b >= 'a' && b <= 'z' ? (byte)(b - 32) : b;
+	}
+}
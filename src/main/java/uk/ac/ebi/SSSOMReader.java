@@ -0,0 +1,384 @@
+package uk.ac.ebi;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.yaml.snakeyaml.Yaml;
+
+// Reads an SSSOM TSV file in a single pass through a large buffer: the "# " YAML header, the column names and then
+// one row at a time. A row is only tokenized into field offsets into the buffer; a field is decoded into a String
+// when it is asked for. Follows the rules of CSVFormat.TDF with '#' comments, which the files were read with before.
+public class SSSOMReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final ReadableByteChannel channel;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean eof;
+
+	private int[] fieldStarts = new int[32];
+	private int[] fieldEnds = new int[32];
+	private boolean[] fieldEscaped = new boolean[32];
+	private int fieldCount;
+
+	private final Map<String, Object> yamlHeader;
+	private final String[] columns;
+
+	private final SSSOMProjection projection;
+	private boolean[] projected; // null while reading the column names
+	private int subjectIdColumn = -1;
+	private int objectIdColumn = -1;
+	private int confidenceColumn = -1;
+
+	public SSSOMReader(File sssomFile) throws IOException {
+		this(sssomFile, SSSOMProjection.all());
+	}
+
+	public SSSOMReader(File sssomFile, SSSOMProjection projection) throws IOException {
+		this(CompressedFiles.openChannel(sssomFile), projection);
+	}
+
+	public SSSOMReader(ReadableByteChannel channel, SSSOMProjection projection) throws IOException {
+		this.channel = channel;
+		this.projection = projection;
+		try {
+			this.yamlHeader = readYamlHeader();
+			this.columns = nextRecord() ? fieldsAsStrings() : new String[0];
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+		projected = new boolean[columns.length];
+		for (int i = 0; i < columns.length; i++)
+			projected[i] = projection.includes(columns[i]);
+		subjectIdColumn = getColumnIndex(SSSOMProjection.SUBJECT_ID);
+		objectIdColumn = getColumnIndex(SSSOMProjection.OBJECT_ID);
+		confidenceColumn = getColumnIndex(SSSOMProjection.CONFIDENCE);
+	}
+
+	public Map<String, Object> getYamlHeader() {
+		return yamlHeader;
+	}
+
+	public String[] getColumns() {
+		return columns;
+	}
+
+	// Returns -1 if the file has no such column.
+	public int getColumnIndex(String column) {
+		for (int i = 0; i < columns.length; i++)
+			if (columns[i].equals(column))
+				return i;
+		return -1;
+	}
+
+	// Moves to the next row. The previous row's fields are no longer available afterwards.
+	public boolean next() throws IOException {
+		return nextRecord();
+	}
+
+	// Returns null if the row has no such field, as CSVRecord.toMap() did for short rows, or if the column is not
+	// part of the projection.
+	public String get(int column) {
+		if (!isAvailable(column))
+			return null;
+		int start = fieldStarts[column];
+		int end = fieldEnds[column];
+		if (!fieldEscaped[column])
+			return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+
+		byte[] unescaped = new byte[end - start];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			unescaped[length++] = buffer[i];
+			if (buffer[i] == '"')
+				i++; // "" inside a quoted field stands for one quote
+		}
+		return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+	}
+
+	// The field as a number, as the confidence filter reads it: NaN if it is empty, missing or not a number.
+	double getDouble(int column) {
+		return isEmpty(column) ? Double.NaN : parseDouble(fieldStarts[column], fieldEnds[column]);
+	}
+
+	public boolean isEmpty(int column) {
+		return !isAvailable(column) || fieldStarts[column] == fieldEnds[column];
+	}
+
+	private boolean isAvailable(int column) {
+		return column >= 0 && column < fieldCount && (projected == null || projected[column]);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private Map<String, Object> readYamlHeader() throws IOException {
+		StringBuilder yamlText = new StringBuilder();
+		while (fill(2) && buffer[position] == '#' && buffer[position + 1] == ' ') {
+			int lineEnd = lineEnd();
+			int textEnd = buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+			if (textEnd - position > 2) {
+				yamlText.append(new String(buffer, position + 2, textEnd - position - 2, StandardCharsets.UTF_8));
+				yamlText.append("\n");
+			}
+			position = Math.min(lineEnd + 1, limit);
+		}
+
+		Map<String, Object> yamlHeaderMap = new Yaml().load(yamlText.toString());
+		return yamlHeaderMap != null ? yamlHeaderMap : new LinkedHashMap<>();
+	}
+
+	// Returns the offset of the '\n' ending the line at the current position, or the end of the data if there is
+	// none. The whole line is kept in the buffer.
+	private int lineEnd() throws IOException {
+		int scanned = 0;
+		while (true) {
+			int i = position + scanned;
+			while (i < limit && buffer[i] != '\n')
+				i++;
+			scanned = i - position;
+			if (i < limit || !fill(scanned + 1))
+				return position + scanned;
+		}
+	}
+
+	private boolean nextRecord() throws IOException {
+		while (true) {
+			if (!fill(1)) {
+				fieldCount = 0;
+				return false;
+			}
+			byte first = buffer[position];
+			if (first == '\n' || first == '\r') {
+				position++; // empty line
+				continue;
+			}
+			if (first == '#') {
+				position = Math.min(lineEnd() + 1, limit);
+				continue;
+			}
+			int end;
+			while ((end = parseRecord(position)) < 0)
+				fill(limit - position + 1); // the record runs past the buffered data
+			position = end;
+			if (projected == null || isAccepted())
+				return true;
+		}
+	}
+
+	private boolean isAccepted() {
+		if (projection.hasPrefixFilter()) {
+			boolean included = isAvailable(subjectIdColumn) && projection.isIncludedPrefix(
+					buffer, fieldStarts[subjectIdColumn], fieldEnds[subjectIdColumn]);
+			if (!included)
+				included = isAvailable(objectIdColumn) && projection.isIncludedPrefix(
+						buffer, fieldStarts[objectIdColumn], fieldEnds[objectIdColumn]);
+			if (!included)
+				return false;
+		}
+		if (projection.hasConfidenceFilter() && !isEmpty(confidenceColumn)) {
+			double confidence = parseDouble(fieldStarts[confidenceColumn], fieldEnds[confidenceColumn]);
+			if (confidence < projection.getMinConfidence())
+				return false;
+		}
+		return true;
+	}
+
+	// Parses plain decimals such as 0.95 straight from the buffer; anything else goes through Double.parseDouble.
+	// Returns NaN, which passes any minimum, if the value is not a number.
+	private double parseDouble(int start, int end) {
+		long digits = 0;
+		int scale = -1;
+		int i = start;
+		for (; i < end && i - start < 18; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				digits = digits * 10 + (b - '0');
+				if (scale >= 0)
+					scale++;
+			} else if (b == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == end && i > start) {
+			double value = digits;
+			for (int s = 0; s < scale; s++)
+				value /= 10;
+			return value;
+		}
+		try {
+			return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	// Splits the record starting at start into fields. Returns the offset after the record, or -1 if more data
+	// has to be read first.
+	private int parseRecord(int start) {
+		fieldCount = 0;
+		int i = start;
+		while (true) {
+			if (projected != null && (fieldCount >= projected.length || !projected[fieldCount])) {
+				i = skipField(i);
+				if (i < 0)
+					return -1;
+				fieldCount++;
+			} else {
+				i = parseField(i);
+				if (i < 0)
+					return -1;
+			}
+
+			if (i >= limit)
+				return limit;
+			if (buffer[i] == '\t') {
+				i++;
+				continue;
+			}
+			if (buffer[i] == '\r') {
+				if (i + 1 >= limit && !eof)
+					return -1;
+				i++;
+			}
+			if (i < limit && buffer[i] == '\n')
+				i++;
+			return i;
+		}
+	}
+
+	// Moves past a field that is not projected without recording it. Returns the offset of the delimiter or line
+	// end after it, or -1 if more data has to be read first.
+	private int skipField(int i) {
+		while (i < limit && buffer[i] == ' ')
+			i++;
+		if (i < limit && buffer[i] == '"') {
+			i++;
+			while (true) {
+				while (i < limit && buffer[i] != '"')
+					i++;
+				if (i + 1 >= limit) {
+					if (!eof)
+						return -1;
+					i = limit;
+					break;
+				}
+				if (buffer[i + 1] != '"') {
+					i++;
+					break;
+				}
+				i += 2;
+			}
+		}
+		while (i < limit && buffer[i] != '\t' && buffer[i] != '\n' && buffer[i] != '\r')
+			i++;
+		return i >= limit && !eof ? -1 : i;
+	}
+
+	// Records the offsets of the field starting at i. Returns the offset of the delimiter or line end after it, or
+	// -1 if more data has to be read first.
+	private int parseField(int i) {
+		while (i < limit && buffer[i] == ' ')
+			i++;
+		int fieldStart;
+		int fieldEnd;
+		boolean escaped = false;
+		if (i < limit && buffer[i] == '"') {
+			fieldStart = ++i;
+			while (true) {
+				if (i >= limit && !eof)
+					return -1;
+				if (i >= limit)
+					break; // unterminated quote at the end of the file
+				if (buffer[i] == '"') {
+					if (i + 1 >= limit && !eof)
+						return -1;
+					if (i + 1 < limit && buffer[i + 1] == '"') {
+						escaped = true;
+						i += 2;
+						continue;
+					}
+					break;
+				}
+				i++;
+			}
+			fieldEnd = i++;
+			while (i < limit && buffer[i] != '\t' && buffer[i] != '\n' && buffer[i] != '\r')
+				i++; // ignore anything between the closing quote and the delimiter
+		} else {
+			fieldStart = i;
+			while (i < limit && buffer[i] != '\t' && buffer[i] != '\n' && buffer[i] != '\r')
+				i++;
+			fieldEnd = i;
+			while (fieldEnd > fieldStart && buffer[fieldEnd - 1] == ' ')
+				fieldEnd--;
+		}
+		if (i >= limit && !eof)
+			return -1;
+		addField(fieldStart, fieldEnd, escaped);
+		return Math.min(i, limit);
+	}
+
+	private void addField(int start, int end, boolean escaped) {
+		if (fieldCount >= fieldStarts.length) {
+			int length = Math.max(fieldStarts.length * 2, fieldCount + 1);
+			fieldStarts = Arrays.copyOf(fieldStarts, length);
+			fieldEnds = Arrays.copyOf(fieldEnds, length);
+			fieldEscaped = Arrays.copyOf(fieldEscaped, length);
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldEscaped[fieldCount] = escaped;
+		fieldCount++;
+	}
+
+	private String[] fieldsAsStrings() {
+		String[] strings = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++)
+			strings[i] = get(i);
+		return strings;
+	}
+
+	// Makes sure the buffer holds at least count bytes from the current position on, moving the unread data to the
+	// start of the buffer and growing it if needed. Returns false if the input ends before that.
+	private boolean fill(int count) throws IOException {
+		if (position + count <= limit)
+			return true;
+		if (eof)
+			return false;
+
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (count > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count));
+
+		ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		while (limit < count && !eof) {
+			byteBuffer.limit(buffer.length).position(limit);
+			int read = channel.read(byteBuffer);
+			if (read < 0)
+				eof = true;
+			else
+				limit += read;
+		}
+		return limit >= count;
+	}
+}
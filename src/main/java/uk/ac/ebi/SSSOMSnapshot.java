@@ -0,0 +1,391 @@
+package uk.ac.ebi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The parsed rows of one SSSOM file, kept on disk so that a rerun does not parse the file again. A snapshot has every
+// row of the file, whatever the filters of the run that made it, as the ids of its subject and object CURIEs and
+// labels and its confidence. The CURIEs are kept once each, as a dictionary-encoded prefix and a local part, and the
+// labels once each; the header fields the conversion uses (curie_map, local_name and mapping_set_id) are kept as
+// strings. The snapshot records the path, size, modification time and SHA-256 of the file it was made from.
+//
+// The layout is a fixed header, the rows, of ROW_BYTES each, and then the dictionaries. The rows are read through
+// memory-mapped windows, so reading them only costs the page cache.
+class SSSOMSnapshot implements Closeable {
+
+	private static final int MAGIC = 0x4f584f53; // "OXOS"
+	private static final int VERSION = 1;
+	private static final int LAST_MODIFIED_OFFSET = 16;
+	private static final int ROW_COUNT_OFFSET = 24;
+	private static final int HEADER_BYTES = 32;
+	private static final int ROW_BYTES = 24; // subject, subject label, object, object label, confidence
+	private static final int WINDOW_ROWS = 1 << 20;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int NONE = -1; // a missing CURIE or label, or a CURIE without a prefix
+
+	private final FileChannel channel;
+	private final long rowCount;
+	private final String path;
+	private final String sha256;
+	private final Map<String, Object> yamlHeader;
+	private final String[] prefixes;
+	private final int[] curiePrefixes;
+	private final String[] curies;
+	private final String[] labels;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long row = -1;
+	private int subject;
+	private int subjectLabel;
+	private int object;
+	private int objectLabel;
+	private double confidence;
+
+	private SSSOMSnapshot(FileChannel channel) throws IOException {
+		this.channel = channel;
+		ByteBuffer header = readHeader(channel);
+		rowCount = header.getLong(ROW_COUNT_OFFSET);
+
+		// not closed, as that would close the channel the rows are mapped from
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(channel.position(HEADER_BYTES + rowCount * ROW_BYTES)), BUFFER_SIZE));
+		path = readString(in);
+		sha256 = readString(in);
+
+		yamlHeader = new HashMap<>();
+		yamlHeader.put("local_name", readString(in));
+		String mappingSetId = readString(in);
+		if (mappingSetId != null)
+			yamlHeader.put("mapping_set_id", mappingSetId);
+		int curieMapSize = in.readInt();
+		if (curieMapSize >= 0) {
+			Map<String, String> curieMap = new LinkedHashMap<>();
+			for (int i = 0; i < curieMapSize; i++)
+				curieMap.put(readString(in), readString(in));
+			yamlHeader.put("curie_map", curieMap);
+		}
+
+		prefixes = new String[in.readInt()];
+		for (int i = 0; i < prefixes.length; i++)
+			prefixes[i] = readString(in);
+		curiePrefixes = new int[in.readInt()];
+		curies = new String[curiePrefixes.length];
+		for (int i = 0; i < curies.length; i++) {
+			curiePrefixes[i] = in.readInt();
+			String localPart = readString(in);
+			curies[i] = curiePrefixes[i] == NONE ? localPart : prefixes[curiePrefixes[i]] + ':' + localPart;
+		}
+		labels = new String[in.readInt()];
+		for (int i = 0; i < labels.length; i++)
+			labels[i] = readString(in);
+	}
+
+	// Where the snapshot of a file goes, named after a hash of its absolute path.
+	static Path pathFor(Path snapshotDir, File sssomFile) {
+		String path = sssomFile.getAbsolutePath();
+		return snapshotDir.resolve(String.format("%016x.snapshot", AggregatingGraphOutput.hash(path, "", "")));
+	}
+
+	// Opens the snapshot if it was made from this file: same path and size, and the same modification time or, failing
+	// that, the same SHA-256, in which case the new modification time is recorded. Returns null otherwise.
+	static SSSOMSnapshot openIfCurrent(Path snapshotPath, File sssomFile) throws IOException {
+		if (!Files.isRegularFile(snapshotPath))
+			return null;
+		FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		SSSOMSnapshot snapshot = null;
+		try {
+			ByteBuffer header = readHeader(channel);
+			if (header == null || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+					|| header.getLong(8) != sssomFile.length()) {
+				channel.close();
+				return null;
+			}
+			snapshot = new SSSOMSnapshot(channel);
+			if (!snapshot.path.equals(sssomFile.getAbsolutePath())) {
+				snapshot.close();
+				return null;
+			}
+			if (header.getLong(LAST_MODIFIED_OFFSET) != sssomFile.lastModified()) {
+				if (!snapshot.sha256.equals(sha256(sssomFile))) {
+					snapshot.close();
+					return null;
+				}
+				ByteBuffer lastModified = ByteBuffer.allocate(Long.BYTES).putLong(0, sssomFile.lastModified());
+				channel.write(lastModified, LAST_MODIFIED_OFFSET);
+			}
+			return snapshot;
+		} catch (IOException | RuntimeException e) {
+			// a snapshot that cannot be read is made again
+			if (snapshot != null)
+				snapshot.close();
+			else
+				channel.close();
+			return null;
+		}
+	}
+
+	private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		while (header.hasRemaining())
+			if (channel.read(header, header.position()) < 0)
+				return null;
+		return header;
+	}
+
+	static String sha256(File file) throws IOException {
+		try (DigestInputStream in = digestInput(file)) {
+			in.transferTo(OutputStream.nullOutputStream());
+			return hex(in.getMessageDigest().digest());
+		}
+	}
+
+	static String sha256(String value) {
+		return hex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	static DigestInputStream digestInput(File file) throws IOException {
+		return new DigestInputStream(Files.newInputStream(file.toPath()), newDigest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hex(byte[] digest) {
+		return HexFormat.of().formatHex(digest);
+	}
+
+	// The header fields of the file, as SSSOMReader.getYamlHeader() would have them.
+	Map<String, Object> getYamlHeader() {
+		return yamlHeader;
+	}
+
+	long getRowCount() {
+		return rowCount;
+	}
+
+	// The prefix of each CURIE id, an index into getPrefixes(), or -1 if the CURIE has no prefix.
+	int[] getCuriePrefixes() {
+		return curiePrefixes;
+	}
+
+	String[] getPrefixes() {
+		return prefixes;
+	}
+
+	// Moves to the next row.
+	boolean next() throws IOException {
+		if (++row >= rowCount)
+			return false;
+		if (window == null || row - windowStart >= WINDOW_ROWS) {
+			windowStart = row;
+			long rows = Math.min(WINDOW_ROWS, rowCount - row);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + row * ROW_BYTES, rows * ROW_BYTES);
+		}
+		subject = window.getInt();
+		subjectLabel = window.getInt();
+		object = window.getInt();
+		objectLabel = window.getInt();
+		confidence = window.getDouble();
+		return true;
+	}
+
+	// The CURIE ids of the row, -1 if the row has none.
+	int getSubject() {
+		return subject;
+	}
+
+	int getObject() {
+		return object;
+	}
+
+	String curie(int curie) {
+		return curie == NONE ? null : curies[curie];
+	}
+
+	String getSubjectLabel() {
+		return subjectLabel == NONE ? null : labels[subjectLabel];
+	}
+
+	String getObjectLabel() {
+		return objectLabel == NONE ? null : labels[objectLabel];
+	}
+
+	// NaN if the row has no confidence.
+	double getConfidence() {
+		return confidence;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == NONE)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(NONE);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// Writes the snapshot of a file while it is being parsed. The rows go straight to a temporary file, the
+	// dictionaries follow them once the file has been read, and the snapshot then replaces any previous one.
+	static class Writer implements Closeable {
+
+		private final Path snapshotPath;
+		private final Path temporary;
+		private final File sssomFile;
+		private final long size;
+		private final long lastModified;
+		private final DataOutputStream out;
+
+		private final Map<String, Integer> prefixIds = new HashMap<>();
+		private final List<String> prefixes = new ArrayList<>();
+		private final Map<String, Integer> curieIds = new HashMap<>();
+		private final List<String> curies = new ArrayList<>();
+		private final Map<String, Integer> labelIds = new HashMap<>();
+		private final List<String> labels = new ArrayList<>();
+		private long rowCount;
+		private boolean finished;
+
+		Writer(Path snapshotPath, File sssomFile) throws IOException {
+			this.snapshotPath = snapshotPath;
+			this.sssomFile = sssomFile;
+			// taken before the file is read, so a change while it is read makes the snapshot stale
+			this.size = sssomFile.length();
+			this.lastModified = sssomFile.lastModified();
+			Files.createDirectories(snapshotPath.getParent());
+			temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp-"
+					+ Thread.currentThread().getId() + "-" + System.nanoTime());
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE));
+			out.write(new byte[HEADER_BYTES]);
+		}
+
+		void addRow(String subject, String subjectLabel, String object, String objectLabel, double confidence)
+				throws IOException {
+			out.writeInt(curieId(subject));
+			out.writeInt(id(subjectLabel, labelIds, labels));
+			out.writeInt(curieId(object));
+			out.writeInt(id(objectLabel, labelIds, labels));
+			out.writeDouble(confidence);
+			rowCount++;
+		}
+
+		private int curieId(String curie) {
+			return id(curie, curieIds, curies);
+		}
+
+		private static int id(String value, Map<String, Integer> ids, List<String> values) {
+			if (value == null)
+				return NONE;
+			Integer id = ids.get(value);
+			if (id == null) {
+				id = values.size();
+				ids.put(value, id);
+				values.add(value);
+			}
+			return id;
+		}
+
+		// Writes the dictionaries and moves the snapshot in place. The SHA-256 is the one of the bytes just parsed.
+		void finish(Map<String, Object> yamlHeader, String sha256) throws IOException {
+			writeString(out, sssomFile.getAbsolutePath());
+			writeString(out, sha256);
+			writeString(out, yamlHeader.get("local_name") == null ? null : yamlHeader.get("local_name").toString());
+			writeString(out, yamlHeader.get("mapping_set_id") == null ? null
+					: yamlHeader.get("mapping_set_id").toString());
+			if (yamlHeader.get("curie_map") instanceof Map) {
+				Map<?, ?> curieMap = (Map<?, ?>)yamlHeader.get("curie_map");
+				out.writeInt(curieMap.size());
+				for (Map.Entry<?, ?> entry : curieMap.entrySet()) {
+					writeString(out, String.valueOf(entry.getKey()));
+					writeString(out, String.valueOf(entry.getValue()));
+				}
+			} else {
+				out.writeInt(NONE);
+			}
+
+			int[] curiePrefixes = new int[curies.size()];
+			String[] localParts = new String[curies.size()];
+			for (int i = 0; i < curies.size(); i++) {
+				String curie = curies.get(i);
+				int colon = curie.indexOf(':');
+				curiePrefixes[i] = colon < 0 ? NONE : id(curie.substring(0, colon), prefixIds, prefixes);
+				localParts[i] = colon < 0 ? curie : curie.substring(colon + 1);
+			}
+			out.writeInt(prefixes.size());
+			for (String prefix : prefixes)
+				writeString(out, prefix);
+			out.writeInt(curies.size());
+			for (int i = 0; i < curies.size(); i++) {
+				out.writeInt(curiePrefixes[i]);
+				writeString(out, localParts[i]);
+			}
+			out.writeInt(labels.size());
+			for (String label : labels)
+				writeString(out, label);
+			out.close();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+					.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(lastModified).putLong(rowCount);
+			header.flip();
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (header.hasRemaining())
+					channel.write(header, header.position());
+			}
+			Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			finished = true;
+		}
+
+		// Drops the snapshot unless it was finished.
+		@Override
+		public void close() throws IOException {
+			if (finished)
+				return;
+			out.close();
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package uk.ac.ebi;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.GsonBuilder;
+
+// The terms and mappings CSV files split into shards: terms by a hash of their CURIE, and mappings by a hash of their
+// fromCurie, so the mappings of a shard start from the terms of the same shard. Every shard is a CsvGraphOutput with
+// its own header and writer threads, and can be loaded at the same time as the others, as no term is in two shards.
+//
+// The shards are listed in shards.json, next to the terms shards.
+class ShardedGraphOutput implements GraphOutput {
+
+	static final String MANIFEST_FILE = "shards.json";
+
+	private final Path[] nodesPaths;
+	private final Path[] edgesPaths;
+	private final CsvGraphOutput[] shards;
+	private final long[] terms;
+	private final long[] mappings;
+
+	ShardedGraphOutput(Path outputNodesPath, Path outputEdgesPath, int shardCount, int compressionThreads,
+					   Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, boolean aggregatedMappings) throws IOException {
+		nodesPaths = new Path[shardCount];
+		edgesPaths = new Path[shardCount];
+		shards = new CsvGraphOutput[shardCount];
+		terms = new long[shardCount];
+		mappings = new long[shardCount];
+		try {
+			for (int shard = 0; shard < shardCount; shard++) {
+				nodesPaths[shard] = shardPath(outputNodesPath, shard, shardCount);
+				edgesPaths[shard] = shardPath(outputEdgesPath, shard, shardCount);
+				shards[shard] = new CsvGraphOutput(nodesPaths[shard], edgesPaths[shard], compressionThreads,
+						mappingColumns, aggregatedMappings);
+			}
+		} catch (IOException | RuntimeException e) {
+			closeShards();
+			throw e;
+		}
+	}
+
+	// The shard of a CURIE, the same from one run and one JVM to the next.
+	static int shardOf(String curie, int shardCount) {
+		int hash = curie.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+	}
+
+	// ols_terms.csv.gz becomes ols_terms-03.csv.gz for the fourth of 16 shards.
+	static Path shardPath(Path path, int shard, int shardCount) {
+		String name = path.getFileName().toString();
+		int dot = name.indexOf('.');
+		String base = dot < 0 ? name : name.substring(0, dot);
+		String extension = dot < 0 ? "" : name.substring(dot);
+		int digits = Integer.toString(shardCount - 1).length();
+		return path.resolveSibling(String.format("%s-%0" + digits + "d%s", base, shard, extension));
+	}
+
+	@Override
+	public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException {
+		int shard = shardOf(nodeId, shards.length);
+		shards[shard].writeTerm(nodeId, nodeLabel, prefixes);
+		terms[shard]++;
+	}
+
+	@Override
+	public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException {
+		int shard = shardOf(fromId, shards.length);
+		shards[shard].writeMapping(rowPlan, fromId, toId);
+		mappings[shard]++;
+	}
+
+	@Override
+	public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		int shard = shardOf(fromId, shards.length);
+		shards[shard].writeAggregatedMapping(rowPlan, fromId, toId, count, sources);
+		mappings[shard]++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeShards();
+
+		Path manifestPath = nodesPaths[0].toAbsolutePath().resolveSibling(MANIFEST_FILE);
+		ShardManifest manifest = new ShardManifest();
+		manifest.partitioning = "terms by curie, mappings by fromCurie: floorMod(h ^ (h >>> 16), shardCount)"
+				+ " where h is the Java String hashCode";
+		manifest.shardCount = shards.length;
+		for (int shard = 0; shard < shards.length; shard++) {
+			ShardManifest.Shard entry = new ShardManifest.Shard();
+			entry.shard = shard;
+			entry.terms = manifestPath.getParent().relativize(nodesPaths[shard].toAbsolutePath()).toString();
+			entry.mappings = manifestPath.getParent().relativize(edgesPaths[shard].toAbsolutePath()).toString();
+			entry.termRows = terms[shard];
+			entry.mappingRows = mappings[shard];
+			manifest.shards.add(entry);
+		}
+		try (Writer writer = Files.newBufferedWriter(manifestPath, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(manifest, writer);
+		}
+		System.out.println("wrote " + shards.length + " shards, listed in " + manifestPath);
+	}
+
+	private void closeShards() throws IOException {
+		IOException failure = null;
+		for (CsvGraphOutput shard : shards) {
+			if (shard == null)
+				continue;
+			try {
+				shard.close();
+			} catch (IOException e) {
+				if (failure == null)
+					failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	static class ShardManifest {
+		String partitioning;
+		int shardCount;
+		List<Shard> shards = new ArrayList<>();
+
+		static class Shard {
+			int shard;
+			String terms;
+			String mappings;
+			long termRows;
+			long mappingRows;
+		}
+	}
+}
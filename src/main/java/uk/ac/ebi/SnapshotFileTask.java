@@ -0,0 +1,159 @@
+package uk.ac.ebi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.google.gson.Gson;
+
+// An SSSOM file read through its SSSOMSnapshot. If the snapshot directory has a current snapshot of the file, the rows
+// are read from it, and the row filters applied to them, instead of parsing the file. Otherwise the file is parsed as
+// usual, and every row, whatever the filters, goes to a new snapshot on the way.
+class SnapshotFileTask extends SSSOMFileTask {
+
+	private final Path snapshotDir;
+
+	private volatile boolean replayed;
+
+	SnapshotFileTask(File sssomFile, SSSOMProjection projection, DatasourceRegistry datasources,
+					 String date, Oxo1SSSOM2Neo.MappingHeader[] mappingColumns, Predicate<String> isKnownNode,
+					 Path snapshotDir) {
+		super(sssomFile, projection, datasources, date, mappingColumns, isKnownNode);
+		this.snapshotDir = snapshotDir;
+	}
+
+	boolean isReplayed() {
+		return replayed;
+	}
+
+	@Override
+	protected void readBatches() throws IOException, InterruptedException {
+		Path snapshotPath = SSSOMSnapshot.pathFor(snapshotDir, sssomFile);
+		SSSOMSnapshot snapshot = SSSOMSnapshot.openIfCurrent(snapshotPath, sssomFile);
+		if (snapshot == null) {
+			parse(snapshotPath);
+			return;
+		}
+		replayed = true;
+		try (snapshot) {
+			replay(snapshot);
+		}
+	}
+
+	private void replay(SSSOMSnapshot snapshot) throws IOException, InterruptedException {
+		Map<String, Object> yamlHeader = snapshot.getYamlHeader();
+		EdgeRowPlan rowPlan = EdgeRowPlan.compile(yamlHeader, datasources, date, Oxo1SSSOM2Neo.CSV_FORMAT, new Gson(),
+				mappingColumns);
+
+		// the prefix filter is decided once per prefix of the snapshot
+		int[] curiePrefixes = snapshot.getCuriePrefixes();
+		boolean[] includedPrefixes = null;
+		if (projection.hasPrefixFilter()) {
+			String[] prefixes = snapshot.getPrefixes();
+			includedPrefixes = new boolean[prefixes.length];
+			for (int i = 0; i < prefixes.length; i++)
+				includedPrefixes[i] = projection.isIncludedPrefix(prefixes[i]);
+		}
+
+		MappingBatch batch = new MappingBatch();
+		batch.yamlHeader = yamlHeader;
+		batch.rowPlan = rowPlan;
+
+		while (snapshot.next()) {
+			if (includedPrefixes != null
+					&& !isIncluded(snapshot.getSubject(), curiePrefixes, includedPrefixes)
+					&& !isIncluded(snapshot.getObject(), curiePrefixes, includedPrefixes))
+				continue;
+			// NaN, for rows without a confidence, passes
+			if (projection.hasConfidenceFilter() && snapshot.getConfidence() < projection.getMinConfidence())
+				continue;
+			batch = addRow(batch, snapshot.curie(snapshot.getSubject()), snapshot.getSubjectLabel(),
+					snapshot.curie(snapshot.getObject()), snapshot.getObjectLabel());
+		}
+
+		batch.last = true;
+		put(batch);
+	}
+
+	private static boolean isIncluded(int curie, int[] curiePrefixes, boolean[] includedPrefixes) {
+		return curie >= 0 && curiePrefixes[curie] >= 0 && includedPrefixes[curiePrefixes[curie]];
+	}
+
+	private void parse(Path snapshotPath) throws IOException, InterruptedException {
+		// the snapshot has the rows the filters drop as well, so the reader does not filter
+		SSSOMProjection snapshotProjection = SSSOMProjection.forOutputs().addColumns(SSSOMProjection.CONFIDENCE);
+
+		try (SSSOMSnapshot.Writer snapshotWriter = new SSSOMSnapshot.Writer(snapshotPath, sssomFile)) {
+			DigestInputStream rawInput = SSSOMSnapshot.digestInput(sssomFile);
+			try (SSSOMReader sssomReader = new SSSOMReader(
+					CompressedFiles.openChannel(rawInput, sssomFile.getName()), snapshotProjection)) {
+				Map<String, Object> yamlHeader = sssomReader.getYamlHeader();
+				EdgeRowPlan rowPlan = EdgeRowPlan.compile(yamlHeader, datasources, date, Oxo1SSSOM2Neo.CSV_FORMAT,
+						new Gson(), mappingColumns);
+
+				int subjIdColumn = sssomReader.getColumnIndex("subject_id");
+				int subjLabelColumn = sssomReader.getColumnIndex("subject_label");
+				int objIdColumn = sssomReader.getColumnIndex("object_id");
+				int objLabelColumn = sssomReader.getColumnIndex("object_label");
+				int confidenceColumn = sssomReader.getColumnIndex(SSSOMProjection.CONFIDENCE);
+
+				MappingBatch batch = new MappingBatch();
+				batch.yamlHeader = yamlHeader;
+				batch.rowPlan = rowPlan;
+
+				while (sssomReader.next()) {
+					String subjId = sssomReader.get(subjIdColumn);
+					String subjLabel = sssomReader.get(subjLabelColumn);
+					String objId = sssomReader.get(objIdColumn);
+					String objLabel = sssomReader.get(objLabelColumn);
+					double confidence = sssomReader.getDouble(confidenceColumn);
+					snapshotWriter.addRow(subjId, subjLabel, objId, objLabel, confidence);
+
+					if (projection.hasPrefixFilter() && !isIncluded(subjId) && !isIncluded(objId))
+						continue;
+					if (projection.hasConfidenceFilter() && confidence < projection.getMinConfidence())
+						continue;
+					batch = addRow(batch, subjId, subjLabel, objId, objLabel);
+				}
+
+				rawInput.transferTo(OutputStream.nullOutputStream()); // anything the decompressor did not need
+				snapshotWriter.finish(yamlHeader, SSSOMSnapshot.hex(rawInput.getMessageDigest().digest()));
+
+				batch.last = true;
+				put(batch);
+			}
+		}
+	}
+
+	private boolean isIncluded(String curie) {
+		int colon = curie == null ? -1 : curie.indexOf(':');
+		return colon >= 0 && projection.isIncludedPrefix(curie.substring(0, colon));
+	}
+
+	// Adds a row as SSSOMFileTask does, queueing the batch once it is full. Returns the batch for the next row.
+	private MappingBatch addRow(MappingBatch batch, String subjId, String subjLabel, String objId, String objLabel)
+			throws InterruptedException {
+		if (!isKnownNode.test(subjId))
+			batch.addNode(subjId, subjLabel);
+		else
+			batch.knownNodes++;
+		if (!isKnownNode.test(objId))
+			batch.addNode(objId, objLabel);
+		else
+			batch.knownNodes++;
+
+		batch.addEdge(subjId, objId);
+
+		if (batch.isFull()) {
+			EdgeRowPlan rowPlan = batch.rowPlan;
+			put(batch);
+			batch = new MappingBatch();
+			batch.rowPlan = rowPlan;
+		}
+		return batch;
+	}
+}
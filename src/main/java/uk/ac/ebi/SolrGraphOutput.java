@@ -0,0 +1,280 @@
+package uk.ac.ebi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.stream.JsonWriter;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.FileEntity;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.util.Timeout;
+
+// Also writes the terms and mappings as Solr documents, in the JSON array format of the /update handler, so the Solr
+// index can be built without reading the graph back from Neo4j. The documents go to files of chunkSize documents each,
+// terms-00000.json, terms-00001.json, ... and mappings-00000.json, ..., which can be posted to Solr later. With a Solr
+// URL they are also posted as they are written, and committed once the output is closed.
+//
+// A term document has the columns of the terms file, with the CURIE as its id. A mapping document has the columns of
+// the mappings file but the datasource JSON, and the count and sources of aggregated mappings; its id is made of its
+// fromCurie, toCurie and datasourcePrefix, so Solr keeps one document per aggregated mapping. Both have a type field,
+// term or mapping, so they can share a core.
+//
+// The chunks are collected on the thread merging the files, and written and posted on a few threads of their own,
+// which only hold a few chunks at a time.
+class SolrGraphOutput implements GraphOutput {
+
+	private static final int THREADS = 4;
+	private static final Timeout TIMEOUT = Timeout.ofMinutes(5);
+	private static final List<String> TERM_FIELDS = List.copyOf(Oxo1SSSOM2Neo.TermHeader.asListOfString());
+
+	private final GraphOutput output;
+	private final Path solrDir;
+	private final int chunkSize;
+	private final String solrUrl;
+	private final CloseableHttpClient httpClient;
+	private final ExecutorService writers;
+	private final Semaphore inFlight = new Semaphore(2 * THREADS);
+
+	private Chunk terms;
+	private Chunk mappings;
+	private int termChunks;
+	private int mappingChunks;
+	private long termDocuments;
+	private long mappingDocuments;
+	private volatile IOException failure;
+
+	SolrGraphOutput(GraphOutput output, Path solrDir, int chunkSize, String solrUrl) throws IOException {
+		this.output = output;
+		this.solrDir = solrDir;
+		this.chunkSize = chunkSize;
+		this.solrUrl = solrUrl == null ? null : solrUrl.replaceAll("/+$", "");
+		Files.createDirectories(solrDir);
+		httpClient = solrUrl == null ? null : HttpClients.custom()
+				.setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+						.setMaxConnTotal(THREADS)
+						.setMaxConnPerRoute(THREADS)
+						.build())
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectionRequestTimeout(TIMEOUT)
+						.setResponseTimeout(TIMEOUT)
+						.build())
+				.build();
+		writers = Executors.newFixedThreadPool(THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "solr-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		terms = new Chunk(chunkSize);
+		mappings = new Chunk(chunkSize);
+	}
+
+	@Override
+	public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) throws IOException {
+		output.writeTerm(nodeId, nodeLabel, prefixes);
+		terms.add(null, nodeId, nodeLabel, Oxo1SSSOM2Neo.termUri(nodeId, prefixes),
+				Oxo1SSSOM2Neo.termPrefix(nodeId, prefixes));
+		if (terms.count == chunkSize)
+			submit(terms, "terms", termChunks++);
+	}
+
+	@Override
+	public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) throws IOException {
+		output.writeMapping(rowPlan, fromId, toId);
+		addMapping(rowPlan, fromId, toId, null, null);
+	}
+
+	@Override
+	public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count, String sources)
+			throws IOException {
+		output.writeAggregatedMapping(rowPlan, fromId, toId, count, sources);
+		addMapping(rowPlan, fromId, toId, Long.toString(count), sources);
+	}
+
+	private void addMapping(EdgeRowPlan rowPlan, String fromId, String toId, String count, String sources)
+			throws IOException {
+		mappings.add(rowPlan, fromId, toId, count, sources);
+		if (mappings.count == chunkSize)
+			submit(mappings, "mappings", mappingChunks++);
+	}
+
+	private void submit(Chunk chunk, String name, int number) throws IOException {
+		checkFailure();
+		if (chunk == terms) {
+			termDocuments += chunk.count;
+			terms = new Chunk(chunkSize);
+		} else {
+			mappingDocuments += chunk.count;
+			mappings = new Chunk(chunkSize);
+		}
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing Solr documents");
+		}
+		Path path = solrDir.resolve(String.format("%s-%05d.json", name, number));
+		writers.execute(() -> {
+			try {
+				if (failure == null) {
+					write(chunk, name.equals("terms"), path);
+					if (httpClient != null)
+						post(new FileEntity(path.toFile(), ContentType.APPLICATION_JSON), "/update?commit=false");
+				}
+			} catch (IOException | RuntimeException e) {
+				if (failure == null)
+					failure = e instanceof IOException ? (IOException)e : new IOException(e);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+
+	private static void write(Chunk chunk, boolean terms, Path path) throws IOException {
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+				Files.newOutputStream(temporary), StandardCharsets.UTF_8)))) {
+			json.beginArray();
+			for (int i = 0; i < chunk.count; i++) {
+				int offset = i * Chunk.WIDTH;
+				if (terms)
+					writeTerm(json, chunk.values[offset], chunk.values[offset + 1], chunk.values[offset + 2],
+							chunk.values[offset + 3]);
+				else
+					writeMapping(json, chunk.rowPlans[i], chunk.values[offset], chunk.values[offset + 1],
+							chunk.values[offset + 2], chunk.values[offset + 3]);
+			}
+			json.endArray();
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void writeTerm(JsonWriter json, String nodeId, String nodeLabel, String uri, String prefix)
+			throws IOException {
+		List<String> row = Oxo1SSSOM2Neo.termRow(nodeId, nodeLabel, uri, prefix);
+		json.beginObject();
+		json.name("id").value(nodeId);
+		json.name("type").value("term");
+		for (int col = 0; col < TERM_FIELDS.size(); col++)
+			json.name(TERM_FIELDS.get(col)).value(row.get(col));
+		json.endObject();
+	}
+
+	private static void writeMapping(JsonWriter json, EdgeRowPlan rowPlan, String fromId, String toId, String count,
+									 String sources) throws IOException {
+		json.beginObject();
+		json.name("id").value(fromId + ' ' + toId + ' ' + rowPlan.getDatasourcePrefix());
+		json.name("type").value("mapping");
+		for (Oxo1SSSOM2Neo.MappingHeader header : Oxo1SSSOM2Neo.MappingHeader.values()) {
+			switch (header) {
+				case FROM_CURIE:
+					json.name(header.getValue()).value(fromId);
+					break;
+				case TO_CURIE:
+					json.name(header.getValue()).value(toId);
+					break;
+				case DATASOURCE:
+					break; // the datasource is found from its prefix
+				default:
+					json.name(header.getValue()).value(rowPlan.getConstant(header));
+			}
+		}
+		if (count != null) {
+			json.name("count").value(Long.parseLong(count));
+			json.name("sources").beginArray();
+			for (String source : sources.split(";"))
+				json.value(source);
+			json.endArray();
+		}
+		json.endObject();
+	}
+
+	private void post(HttpEntity entity, String path) throws IOException {
+		HttpPost httpPost = new HttpPost(solrUrl + path);
+		httpPost.setEntity(entity);
+		httpClient.execute(httpPost, response -> {
+			int status = response.getCode();
+			if (status < 200 || status >= 300)
+				throw new IOException("Solr returned status " + status + " for " + httpPost.getRequestUri());
+			return null;
+		});
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null)
+			throw new IOException("Failed to write Solr documents", failure);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (terms.count > 0)
+				submit(terms, "terms", termChunks++);
+			if (mappings.count > 0)
+				submit(mappings, "mappings", mappingChunks++);
+			writers.shutdown();
+			try {
+				writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while writing Solr documents");
+			}
+			checkFailure();
+			if (httpClient != null)
+				post(new StringEntity("{\"commit\":{}}", ContentType.APPLICATION_JSON), "/update");
+			System.out.println("wrote " + termDocuments + " term and " + mappingDocuments + " mapping Solr documents in "
+					+ (termChunks + mappingChunks) + " chunks to " + solrDir
+					+ (solrUrl != null ? ", posted to " + solrUrl : ""));
+		} finally {
+			writers.shutdownNow();
+			try {
+				if (httpClient != null)
+					httpClient.close();
+			} finally {
+				output.close();
+			}
+		}
+	}
+
+	// Up to chunkSize documents, each WIDTH strings and the row plan of a mapping.
+	private static final class Chunk {
+		static final int WIDTH = 4;
+
+		final String[] values;
+		final EdgeRowPlan[] rowPlans;
+		int count;
+
+		Chunk(int size) {
+			values = new String[size * WIDTH];
+			rowPlans = new EdgeRowPlan[size];
+		}
+
+		void add(EdgeRowPlan rowPlan, String first, String second, String third, String fourth) {
+			int offset = count * WIDTH;
+			values[offset] = first;
+			values[offset + 1] = second;
+			values[offset + 2] = third;
+			values[offset + 3] = fourth;
+			rowPlans[count++] = rowPlan;
+		}
+	}
+}
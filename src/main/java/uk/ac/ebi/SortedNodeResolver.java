@@ -0,0 +1,289 @@
+package uk.ac.ebi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+// Resolves the label of every node by sorting, so the memory used does not depend on the number of nodes. The
+// (curie, label) candidates are buffered up to a memory budget, then sorted, collapsed into one record per distinct
+// pair and spilled to a run file. At the end the runs are merged, and the labels of each CURIE are reduced to one:
+// the first non-empty label seen, or the most frequent one. CURIEs without any label get their id as label, as the
+// streaming resolution does, and come out in CURIE order.
+class SortedNodeResolver implements Closeable {
+
+	private static final int MAX_MERGE_FAN_IN = 64;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// rough heap cost of a buffered candidate besides its characters
+	private static final int CANDIDATE_OVERHEAD = 96;
+
+	private static final Comparator<Candidate> ORDER =
+			Comparator.<Candidate, String>comparing(candidate -> candidate.curie).thenComparing(candidate -> candidate.label);
+
+	private final Path runDir;
+	private final long memoryBudget;
+	private final ConversionOptions.LabelChoice labelChoice;
+
+	private final List<Candidate> buffer = new ArrayList<>();
+	private long bufferBytes;
+	private long sequence;
+	private final List<Path> runs = new ArrayList<>();
+
+	private long nodes;
+	private long nodesWithoutLabel;
+
+	SortedNodeResolver(Path tempDir, long memoryBudget, ConversionOptions.LabelChoice labelChoice) throws IOException {
+		Files.createDirectories(tempDir);
+		this.runDir = Files.createTempDirectory(tempDir, "oxo-nodes-");
+		this.memoryBudget = memoryBudget;
+		this.labelChoice = labelChoice;
+	}
+
+	void add(String curie, String label) throws IOException {
+		if (label == null)
+			label = "";
+		buffer.add(new Candidate(curie, label, 1, sequence++));
+		bufferBytes += CANDIDATE_OVERHEAD + 2L * (curie.length() + label.length());
+		if (bufferBytes >= memoryBudget)
+			spill();
+	}
+
+	// Calls the consumer with every CURIE and its label, in CURIE order.
+	void resolve(NodeConsumer consumer) throws IOException {
+		List<CandidateSource> sources = new ArrayList<>();
+		try {
+			if (runs.isEmpty()) {
+				Iterator<Candidate> sorted = sortAndCollapse().iterator();
+				sources.add(() -> sorted.hasNext() ? sorted.next() : null);
+			} else {
+				spill();
+				while (runs.size() > MAX_MERGE_FAN_IN)
+					mergeRuns();
+				for (Path run : runs)
+					sources.add(new RunReader(run));
+			}
+
+			CandidateSource merged = merge(sources);
+			Candidate candidate = merged.next();
+			while (candidate != null) {
+				String curie = candidate.curie;
+				Candidate best = null;
+				for (; candidate != null && candidate.curie.equals(curie); candidate = merged.next()) {
+					if (!candidate.label.isEmpty() && (best == null || isBetter(candidate, best)))
+						best = candidate;
+				}
+				nodes++;
+				if (best == null)
+					nodesWithoutLabel++;
+				consumer.accept(curie, best != null ? best.label : curie);
+			}
+		} finally {
+			for (CandidateSource source : sources)
+				source.close();
+		}
+	}
+
+	long getNodes() {
+		return nodes;
+	}
+
+	long getNodesWithoutLabel() {
+		return nodesWithoutLabel;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try (Stream<Path> files = Files.list(runDir)) {
+			for (Path file : (Iterable<Path>)files::iterator)
+				Files.deleteIfExists(file);
+		}
+		Files.deleteIfExists(runDir);
+	}
+
+	private boolean isBetter(Candidate candidate, Candidate best) {
+		if (labelChoice == ConversionOptions.LabelChoice.MOST_FREQUENT && candidate.count != best.count)
+			return candidate.count > best.count;
+		return candidate.firstSeen < best.firstSeen;
+	}
+
+	private List<Candidate> sortAndCollapse() {
+		buffer.sort(ORDER);
+		List<Candidate> collapsed = new ArrayList<>();
+		Candidate previous = null;
+		for (Candidate candidate : buffer) {
+			if (previous != null && ORDER.compare(previous, candidate) == 0)
+				previous.absorb(candidate);
+			else
+				collapsed.add(previous = candidate);
+		}
+		buffer.clear();
+		bufferBytes = 0;
+		return collapsed;
+	}
+
+	private void spill() throws IOException {
+		if (buffer.isEmpty())
+			return;
+		Path run = runDir.resolve("run-" + runs.size() + ".bin");
+		try (DataOutputStream out = runWriter(run)) {
+			for (Candidate candidate : sortAndCollapse())
+				candidate.write(out);
+		}
+		runs.add(run);
+	}
+
+	// Merges the first runs into one, so that no more than MAX_MERGE_FAN_IN files are open at the same time.
+	private void mergeRuns() throws IOException {
+		List<Path> inputs = new ArrayList<>(runs.subList(0, MAX_MERGE_FAN_IN));
+		runs.subList(0, MAX_MERGE_FAN_IN).clear();
+		Path run = runDir.resolve("merged-" + System.nanoTime() + ".bin");
+
+		List<CandidateSource> sources = new ArrayList<>();
+		try (DataOutputStream out = runWriter(run)) {
+			for (Path input : inputs)
+				sources.add(new RunReader(input));
+			CandidateSource merged = merge(sources);
+			for (Candidate candidate = merged.next(); candidate != null; candidate = merged.next())
+				candidate.write(out);
+		} finally {
+			for (CandidateSource source : sources)
+				source.close();
+		}
+		for (Path input : inputs)
+			Files.delete(input);
+		runs.add(run);
+	}
+
+	// Merges sorted sources into one, collapsing the records of the same (curie, label) pair.
+	private static CandidateSource merge(List<CandidateSource> sources) throws IOException {
+		PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> ORDER.compare(a.candidate, b.candidate));
+		for (CandidateSource source : sources) {
+			Candidate first = source.next();
+			if (first != null)
+				heads.add(new Head(first, source));
+		}
+		return () -> {
+			Head head = heads.poll();
+			if (head == null)
+				return null;
+			Candidate merged = head.candidate;
+			advance(heads, head);
+			while (!heads.isEmpty() && ORDER.compare(heads.peek().candidate, merged) == 0) {
+				Head same = heads.poll();
+				merged.absorb(same.candidate);
+				advance(heads, same);
+			}
+			return merged;
+		};
+	}
+
+	private static void advance(PriorityQueue<Head> heads, Head head) throws IOException {
+		head.candidate = head.source.next();
+		if (head.candidate != null)
+			heads.add(head);
+	}
+
+	private static DataOutputStream runWriter(Path run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+	}
+
+	interface NodeConsumer {
+		void accept(String nodeId, String nodeLabel) throws IOException;
+	}
+
+	private interface CandidateSource extends Closeable {
+		// The next candidate, or null at the end.
+		Candidate next() throws IOException;
+
+		@Override
+		default void close() throws IOException {
+		}
+	}
+
+	private static final class Head {
+		Candidate candidate;
+		final CandidateSource source;
+
+		Head(Candidate candidate, CandidateSource source) {
+			this.candidate = candidate;
+			this.source = source;
+		}
+	}
+
+	// A label of a CURIE, how many times it was seen and the position of the first time.
+	private static final class Candidate {
+		final String curie;
+		final String label;
+		long count;
+		long firstSeen;
+
+		Candidate(String curie, String label, long count, long firstSeen) {
+			this.curie = curie;
+			this.label = label;
+			this.count = count;
+			this.firstSeen = firstSeen;
+		}
+
+		void absorb(Candidate other) {
+			count += other.count;
+			firstSeen = Math.min(firstSeen, other.firstSeen);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeString(out, curie);
+			writeString(out, label);
+			out.writeLong(count);
+			out.writeLong(firstSeen);
+		}
+
+		private static void writeString(DataOutputStream out, String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static final class RunReader implements CandidateSource {
+		private final DataInputStream in;
+
+		RunReader(Path run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+		}
+
+		@Override
+		public Candidate next() throws IOException {
+			int curieLength;
+			try {
+				curieLength = in.readInt();
+			} catch (EOFException e) {
+				return null;
+			}
+			String curie = readString(curieLength);
+			String label = readString(in.readInt());
+			return new Candidate(curie, label, in.readLong(), in.readLong());
+		}
+
+		private String readString(int length) throws IOException {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
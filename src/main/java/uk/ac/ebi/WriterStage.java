@@ -0,0 +1,154 @@
+package uk.ac.ebi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.csv.CSVPrinter;
+
+// The last stage of the conversion, printing the rows of one CSV output on its own thread. Records are collected into
+// batches on the thread deciding what to write, and handed over through a bounded queue, so that thread only waits
+// when the output falls several batches behind, while quoting, encoding and compressing the rows overlaps with
+// reading and deduplicating the next ones.
+//
+// A record is up to four strings, printed with the context of its batch (for instance the EdgeRowPlan of the file
+// the record comes from). Everything that depends on the state of the conversion must be worked out before a record
+// is written, the printer only formats it.
+class WriterStage implements Closeable {
+
+	static final int BATCH_SIZE = 4096;
+	private static final int QUEUE_CAPACITY = 8;
+	private static final int WIDTH = 4;
+
+	interface RowPrinter {
+		void print(CSVPrinter printer, Object context, String first, String second, String third, String fourth)
+				throws IOException;
+	}
+
+	private final String name;
+	private final CSVPrinter printer;
+	private final RowPrinter rowPrinter;
+	private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final Thread thread;
+
+	private volatile IOException failure;
+	private Batch batch = new Batch();
+
+	WriterStage(String name, CSVPrinter printer, RowPrinter rowPrinter) {
+		this.name = name;
+		this.printer = printer;
+		this.rowPrinter = rowPrinter;
+		this.thread = new Thread(this::printBatches, name + "-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void write(Object context, String first, String second, String third, String fourth) throws IOException {
+		if (batch.count == BATCH_SIZE || (batch.count > 0 && batch.context != context))
+			flush();
+		batch.context = context;
+		int offset = batch.count * WIDTH;
+		batch.values[offset] = first;
+		batch.values[offset + 1] = second;
+		batch.values[offset + 2] = third;
+		batch.values[offset + 3] = fourth;
+		batch.count++;
+	}
+
+	// Prints what was written so far and flushes the printer, waiting until it is done.
+	void sync() throws IOException {
+		CountDownLatch synced = new CountDownLatch(1);
+		batch.synced = synced;
+		flush();
+		try {
+			synced.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing " + name);
+		}
+		checkFailure();
+	}
+
+	// Prints what was written so far and closes the printer. The last batch is queued even after a failure, so the
+	// thread always closes the printer and ends before the failure is thrown.
+	@Override
+	public void close() throws IOException {
+		batch.last = true;
+		put(batch);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing " + name);
+		}
+		checkFailure();
+	}
+
+	private void flush() throws IOException {
+		checkFailure();
+		put(batch);
+		batch = new Batch();
+	}
+
+	private void put(Batch batch) throws IOException {
+		try {
+			batches.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing " + name);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null)
+			throw new IOException("Failed to write " + name, failure);
+	}
+
+	private void printBatches() {
+		try {
+			Batch batch;
+			do {
+				batch = batches.take();
+				try {
+					// after a failure the batches are still taken, so the caller does not block before it notices
+					for (int i = 0; i < batch.count && failure == null; i++) {
+						int offset = i * WIDTH;
+						rowPrinter.print(printer, batch.context, batch.values[offset], batch.values[offset + 1],
+								batch.values[offset + 2], batch.values[offset + 3]);
+					}
+				} catch (IOException | RuntimeException e) {
+					failure = e instanceof IOException ? (IOException)e : new IOException(e);
+				}
+				if (batch.synced != null) {
+					try {
+						if (failure == null)
+							printer.flush();
+					} catch (IOException e) {
+						failure = e;
+					} finally {
+						batch.synced.countDown();
+					}
+				}
+			} while (!batch.last);
+
+			// after a failure only the file is closed, flushing would fail again
+			printer.close(failure == null);
+		} catch (IOException e) {
+			if (failure == null)
+				failure = e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class Batch {
+		final String[] values = new String[BATCH_SIZE * WIDTH];
+		Object context;
+		int count;
+		boolean last;
+		CountDownLatch synced; // counted down once the batch is printed and the printer flushed
+	}
+}
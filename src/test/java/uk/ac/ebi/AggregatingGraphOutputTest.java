@@ -0,0 +1,180 @@
+package uk.ac.ebi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// AggregatingGraphOutput spilling to partitions, and splitting the partitions again, against the in-memory aggregation.
+class AggregatingGraphOutputTest {
+
+	private static final String[] FILES = { "hp", "mondo", "efo" };
+	private static final String[] SETS = { "set-b", "set-a", "set-c" };
+
+	@TempDir
+	Path tempDir;
+
+	private final List<EdgeRowPlan> rowPlans = new ArrayList<>();
+
+	AggregatingGraphOutputTest() throws IOException {
+		// the same datasource from several mapping sets, so a mapping can have more than one source
+		for (String file : FILES)
+			for (String set : SETS)
+				rowPlans.add(rowPlan(file, set));
+	}
+
+	@Test
+	void countsAndSourcesAreTheSameWhenSpilling() throws IOException {
+		List<Object[]> rows = randomRows(new Random(7), 20_000, 600);
+		Map<String, String> expected = reference(rows);
+
+		Recording inMemory = aggregate(rows, Long.MAX_VALUE, 0, 0);
+		assertEquals(expected, inMemory.mappings);
+		// without spilling, the mappings come out in the order they were first seen
+		assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(inMemory.mappings.keySet()));
+		assertEquals(List.of("HP:1", "MONDO:1"), inMemory.terms);
+
+		// partitions of a few hundred mappings each, which fit the budget
+		assertEquals(expected, aggregate(rows, 200_000, 1, 0).mappings);
+
+		// every new mapping spills the table, and no partition of more than one mapping fits the budget
+		assertEquals(expected, aggregate(rows, 1, 1, 1).mappings);
+	}
+
+	@Test
+	void mergesMappingsThatWereAggregatedBefore() throws IOException {
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { 0, "HP:1", "MONDO:1", 3L, "set-c;set-a" });
+		rows.add(new Object[] { 1, "HP:1", "MONDO:1", 1L, null });
+		rows.add(new Object[] { 3, "MONDO:1", "HP:1", 1L, null });
+		rows.add(new Object[] { 2, "HP:1", "MONDO:1", 2L, "set-c" });
+		rows.add(new Object[] { 4, "MONDO:1", "HP:1", 5L, "set-b;set-a" });
+
+		for (long memoryBudget : new long[] { Long.MAX_VALUE, 1 }) {
+			Map<String, String> mappings = aggregate(rows, memoryBudget, 0, 0).mappings;
+			// the sources are in the order they were first seen
+			assertEquals(Map.of("HP:1>MONDO:1@HP", "6 set-c;set-a", "MONDO:1>HP:1@MONDO", "6 set-a;set-b"), mappings);
+		}
+	}
+
+	// Aggregates the rows, checking how many times it spilled and split when asked to, and that it cleaned up.
+	private Recording aggregate(List<Object[]> rows, long memoryBudget, int minSpills, int minSplits)
+			throws IOException {
+		Recording recording = new Recording();
+		AggregatingGraphOutput output = new AggregatingGraphOutput(recording, tempDir, memoryBudget);
+		PrefixResolver prefixes = new PrefixResolver(DatasourceRegistry.empty());
+		output.writeTerm("HP:1", "one", prefixes);
+		for (Object[] row : rows) {
+			EdgeRowPlan rowPlan = rowPlans.get((int)row[0]);
+			if (row[4] == null)
+				output.writeMapping(rowPlan, (String)row[1], (String)row[2]);
+			else
+				output.writeAggregatedMapping(rowPlan, (String)row[1], (String)row[2], (long)row[3], (String)row[4]);
+		}
+		output.writeTerm("MONDO:1", "uno", prefixes);
+		output.close();
+
+		assertTrue(recording.closed);
+		assertTrue(output.getSpills() >= minSpills, output.getSpills() + " spills");
+		assertTrue(output.getSplits() >= minSplits, output.getSplits() + " splits");
+		if (memoryBudget == Long.MAX_VALUE)
+			assertEquals(0, output.getSpills());
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertEquals(0, files.count());
+		}
+		return recording;
+	}
+
+	// The count and sources of each mapping, in the order they were first seen, from every row held in memory.
+	private Map<String, String> reference(List<Object[]> rows) {
+		List<String> sourceOrder = new ArrayList<>();
+		Map<String, Long> counts = new LinkedHashMap<>();
+		Map<String, List<String>> sources = new HashMap<>();
+		for (Object[] row : rows) {
+			EdgeRowPlan rowPlan = rowPlans.get((int)row[0]);
+			String key = row[1] + ">" + row[2] + "@" + rowPlan.getDatasourcePrefix();
+			counts.merge(key, (long)row[3], Long::sum);
+			String[] rowSources = row[4] == null ? new String[] { rowPlan.getSource() } : ((String)row[4]).split(";");
+			for (String source : rowSources) {
+				if (!sourceOrder.contains(source))
+					sourceOrder.add(source);
+				List<String> keySources = sources.computeIfAbsent(key, k -> new ArrayList<>());
+				if (!keySources.contains(source))
+					keySources.add(source);
+			}
+		}
+		Map<String, String> resolved = new LinkedHashMap<>();
+		counts.forEach((key, count) -> {
+			List<String> keySources = sources.get(key);
+			keySources.sort((a, b) -> sourceOrder.indexOf(a) - sourceOrder.indexOf(b));
+			resolved.put(key, count + " " + String.join(";", keySources));
+		});
+		return resolved;
+	}
+
+	// Single rows, and now and then a mapping aggregated before, over a few hundred CURIEs on either side.
+	private List<Object[]> randomRows(Random random, int count, int curies) {
+		List<Object[]> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int rowPlan = random.nextInt(rowPlans.size());
+			String fromId = "HP:" + random.nextInt(curies);
+			String toId = (random.nextBoolean() ? "MONDO:" : "EFO:") + random.nextInt(curies / 20);
+			if (random.nextInt(10) == 0)
+				rows.add(new Object[] { rowPlan, fromId, toId, 1L + random.nextInt(5),
+						random.nextBoolean() ? "set-a;set-d" : "set-d" });
+			else
+				rows.add(new Object[] { rowPlan, fromId, toId, 1L, null });
+		}
+		return rows;
+	}
+
+	private static EdgeRowPlan rowPlan(String file, String mappingSetId) throws IOException {
+		Map<String, Object> yamlHeader = new HashMap<>();
+		yamlHeader.put("local_name", file + ".sssom.tsv");
+		yamlHeader.put("mapping_set_id", mappingSetId);
+		return EdgeRowPlan.compile(yamlHeader, DatasourceRegistry.empty(), "2024-01-01", Oxo1SSSOM2Neo.CSV_FORMAT,
+				new Gson());
+	}
+
+	private static final class Recording implements GraphOutput {
+		final List<String> terms = new ArrayList<>();
+		final Map<String, String> mappings = new LinkedHashMap<>();
+		boolean closed;
+
+		@Override
+		public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) {
+			terms.add(nodeId);
+		}
+
+		@Override
+		public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) {
+			throw new AssertionError("mappings are written aggregated");
+		}
+
+		@Override
+		public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count,
+										   String sources) {
+			// each mapping comes out once
+			assertNull(mappings.put(fromId + ">" + toId + "@" + rowPlan.getDatasourcePrefix(), count + " " + sources));
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package uk.ac.ebi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.configuration.connectors.BoltConnector;
+import org.neo4j.configuration.connectors.ConnectorPortRegister;
+import org.neo4j.configuration.helpers.SocketAddress;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.dbms.api.DatabaseManagementServiceBuilder;
+import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.GraphDatabase;
+import org.neo4j.driver.v1.Logging;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+// Neo4jGraphOutput loading into an embedded Neo4j over Bolt.
+class Neo4jGraphOutputTest {
+
+	@TempDir
+	static Path databaseDir;
+
+	private static DatabaseManagementService database;
+	private static String boltUri;
+	private static Driver queries;
+
+	@TempDir
+	Path spillDir;
+
+	private final DatasourceRegistry datasources = DatasourceRegistry.of(Map.of(
+			"HP", new Datasources.Datasource("HP", "", "HPO", "", "ONTOLOGY", "http://purl.obolibrary.org/obo/HP_",
+					List.of("hpo"), "", "1"),
+			"MONDO", new Datasources.Datasource("MONDO", "", "Mondo", "", "ONTOLOGY",
+					"http://purl.obolibrary.org/obo/MONDO_", List.of(), "", "2")));
+	private final List<String> written = new ArrayList<>();
+
+	@BeforeAll
+	static void startNeo4j() {
+		database = new DatabaseManagementServiceBuilder(databaseDir)
+				.setConfig(BoltConnector.enabled, true)
+				.setConfig(BoltConnector.listen_address, new SocketAddress("localhost", 0))
+				.setConfig(GraphDatabaseSettings.auth_enabled, false)
+				.build();
+		GraphDatabaseAPI graph = (GraphDatabaseAPI)database.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME);
+		boltUri = "bolt://" + graph.getDependencyResolver().resolveDependency(ConnectorPortRegister.class)
+				.getLocalAddress(BoltConnector.NAME);
+		queries = driver();
+	}
+
+	@AfterAll
+	static void stopNeo4j() {
+		queries.close();
+		database.shutdown();
+	}
+
+	@BeforeEach
+	void emptyGraph() {
+		query("MATCH (n) DETACH DELETE n");
+	}
+
+	@Test
+	void loadsTermsWithADatasourceAndTheirMappings() throws IOException {
+		try (GraphOutput output = open(false)) {
+			load(output);
+		}
+		// the inner output still gets every term and mapping
+		assertEquals(List.of("HP:1", "hpo:2", "MONDO:1", "X:1", "HP:1>MONDO:1", "hpo:2>MONDO:1", "HP:1>X:1",
+				"X:1>MONDO:1"), written);
+
+		assertEquals(2, count("MATCH (d:Datasource) RETURN count(d)"));
+		assertEquals(3, count("MATCH (t:Term) RETURN count(t)"));
+		assertEquals(3, count("MATCH (:Term)-[r:HAS_SOURCE]->(:Datasource) RETURN count(r)"));
+		assertEquals(2, count("MATCH (:Term)-[r:MAPPING]->(:Term) RETURN count(r)"));
+		// terms without a datasource are left out, with their mappings
+		assertEquals(0, count("MATCH (t:Term {curie: 'X:1'}) RETURN count(t)"));
+		// an alternative prefix loads under its datasource
+		assertEquals(1, count("MATCH (:Term {curie: 'hpo:2', label: 'two'})-[:HAS_SOURCE]->(:Datasource {prefix: 'HP'})"
+				+ " RETURN count(*)"));
+		assertEquals(1, count("MATCH (:Term {curie: 'HP:1'})-[r:MAPPING {sourcePrefix: 'HP', scope: 'RELATED',"
+				+ " date: '2024-01-01'}]->(:Term {curie: 'MONDO:1'}) RETURN count(r)"));
+	}
+
+	@Test
+	void wipesTheGraphBeforeLoading() throws IOException {
+		query("CREATE (:Term {curie: 'OLD:1'})-[:HAS_SOURCE]->(:Datasource {prefix: 'OLD'})");
+		try (GraphOutput output = open(false)) {
+			load(output);
+		}
+		assertEquals(4, count("MATCH (t:Term) RETURN count(t)"));
+
+		// batches of one, so the wipe takes several of them
+		try (GraphOutput output = new Neo4jGraphOutput(new RecordingOutput(), driver(), datasources, spillDir, 2, 2,
+				true, 1)) {
+			load(output);
+		}
+		assertEquals(0, count("MATCH (t) WHERE t.curie = 'OLD:1' OR t.prefix = 'OLD' RETURN count(t)"));
+		assertEquals(2, count("MATCH (d:Datasource) RETURN count(d)"));
+		assertEquals(3, count("MATCH (t:Term) RETURN count(t)"));
+		assertEquals(3, count("MATCH ()-[r:HAS_SOURCE]->() RETURN count(r)"));
+		assertEquals(2, count("MATCH ()-[r:MAPPING]->() RETURN count(r)"));
+		assertTrue(count("CALL db.constraints() YIELD description RETURN count(*)") >= 2);
+	}
+
+	// Batches of two rows, so the terms take more than one.
+	private GraphOutput open(boolean wipe) throws IOException {
+		return new Neo4jGraphOutput(new RecordingOutput(), driver(), datasources, spillDir, 2, 2, wipe, 50000);
+	}
+
+	private void load(GraphOutput output) throws IOException {
+		Map<String, Object> yamlHeader = new HashMap<>();
+		yamlHeader.put("local_name", "hp.sssom.tsv");
+		yamlHeader.put("curie_map", Map.of("HP", "http://purl.obolibrary.org/obo/HP_"));
+		EdgeRowPlan rowPlan = EdgeRowPlan.compile(yamlHeader, datasources, "2024-01-01", Oxo1SSSOM2Neo.CSV_FORMAT,
+				new Gson());
+		PrefixResolver prefixes = new PrefixResolver(datasources);
+		prefixes.addCurieMap((Map<?, ?>)yamlHeader.get("curie_map"));
+
+		output.writeTerm("HP:1", "one", prefixes);
+		output.writeTerm("hpo:2", "two", prefixes);
+		output.writeTerm("MONDO:1", "uno", prefixes);
+		output.writeTerm("X:1", "unknown", prefixes);
+		output.writeMapping(rowPlan, "HP:1", "MONDO:1");
+		output.writeMapping(rowPlan, "hpo:2", "MONDO:1");
+		output.writeMapping(rowPlan, "HP:1", "X:1");
+		output.writeMapping(rowPlan, "X:1", "MONDO:1");
+	}
+
+	private static Driver driver() {
+		return GraphDatabase.driver(boltUri, AuthTokens.none(),
+				Config.build().withoutEncryption().withLogging(Logging.none()).toConfig());
+	}
+
+	// A session per query, as the 1.x driver cannot chain the bookmarks of a 4.x server.
+	private static long count(String query) {
+		try (Session session = queries.session()) {
+			return session.run(query).single().get(0).asLong();
+		}
+	}
+
+	private static void query(String query) {
+		try (Session session = queries.session()) {
+			session.run(query).consume();
+		}
+	}
+
+	private class RecordingOutput implements GraphOutput {
+
+		@Override
+		public void writeTerm(String nodeId, String nodeLabel, PrefixResolver prefixes) {
+			written.add(nodeId);
+		}
+
+		@Override
+		public void writeMapping(EdgeRowPlan rowPlan, String fromId, String toId) {
+			written.add(fromId + '>' + toId);
+		}
+
+		@Override
+		public void writeAggregatedMapping(EdgeRowPlan rowPlan, String fromId, String toId, long count,
+										   String sources) {
+			written.add(fromId + '>' + toId);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
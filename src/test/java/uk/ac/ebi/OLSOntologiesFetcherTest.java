@@ -0,0 +1,209 @@
+package uk.ac.ebi;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// OLSOntologiesFetcher against a stub of the OLS api/ontologies endpoint.
+class OLSOntologiesFetcherTest {
+
+	@TempDir
+	Path cacheDir;
+
+	private HttpServer server;
+	private ExecutorService handlers;
+	private String olsUrl;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final Map<Integer, String> ifNoneMatch = new ConcurrentHashMap<>();
+	private volatile List<List<String[]>> pages;
+	private volatile int status = 200;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/ontologies", this::handle);
+		handlers = Executors.newFixedThreadPool(8);
+		server.setExecutor(handlers);
+		server.start();
+		olsUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+		handlers.shutdownNow();
+	}
+
+	// Each ontology is { id, preferredPrefix, title }.
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		int page = Integer.parseInt(exchange.getRequestURI().getQuery().replaceAll(".*page=(\\d+).*", "$1"));
+		String etag = "\"page-" + page + "\"";
+		String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+		if (condition != null)
+			ifNoneMatch.put(page, condition);
+		try {
+			// the later pages answer first, so they arrive out of order
+			Thread.sleep(50L * (pages.size() - page));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (status != 200) {
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return;
+		}
+		if (etag.equals(condition)) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		String ontologies = pages.get(page).stream()
+				.map(o -> "{\"config\":{\"id\":\"" + o[0] + "\",\"preferredPrefix\":\"" + o[1] + "\",\"title\":\""
+						+ o[2] + "\"}}")
+				.collect(Collectors.joining(","));
+		byte[] body = ("{\"_embedded\":{\"ontologies\":[" + ontologies + "]},\"page\":{\"size\":"
+				+ OLSOntologiesFetcher.PAGE_SIZE + ",\"totalPages\":" + pages.size() + ",\"number\":" + page + "}}")
+				.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("ETag", etag);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	@Test
+	void mergesAllPagesInPageOrder() throws IOException {
+		pages = List.of(
+				List.of(new String[] { "hp", "HP", "HPO" }, new String[] { "go", "GO", "GO first" }),
+				List.of(new String[] { "mondo", "MONDO", "Mondo" }, new String[] { "go", "GO", "GO second" }),
+				List.of(new String[] { "chebi", "CHEBI", "ChEBI" }, new String[] { "go", "GO", "GO third" }));
+		Map<String, Datasources.Datasource> datasources = new OLSOntologiesFetcher(olsUrl).fetch();
+		assertEquals(3, requests.get());
+		assertEquals(4, datasources.size());
+		assertEquals("Mondo", datasources.get("MONDO").getTitle());
+		// the last page wins, although it was the first to arrive
+		assertEquals("GO third", datasources.get("GO").getTitle());
+	}
+
+	@Test
+	void revalidatesAnExpiredPageAndOnlyRefreshesItsFetchTime() throws IOException {
+		pages = List.of(List.<String[]>of(new String[] { "hp", "HP", "HPO" }));
+		new OLSOntologiesFetcher(olsUrl).setCache(cacheDir, Duration.ofDays(1)).fetch();
+		Path body = cached("ontologies-0.json");
+		Path meta = cached("ontologies-0.meta.json");
+		byte[] bodyBefore = Files.readAllBytes(body);
+		OLSOntologiesFetcher.CachedPage expired = readMeta(meta);
+		expired.fetchedAt = 1;
+		writeMeta(meta, expired);
+
+		long start = System.currentTimeMillis();
+		Map<String, Datasources.Datasource> datasources = new OLSOntologiesFetcher(olsUrl)
+				.setCache(cacheDir, Duration.ofDays(1)).fetch();
+		assertEquals(2, requests.get());
+		assertEquals("\"page-0\"", ifNoneMatch.get(0));
+		assertEquals("HPO", datasources.get("HP").getTitle());
+		assertArrayEquals(bodyBefore, Files.readAllBytes(body));
+		OLSOntologiesFetcher.CachedPage revalidated = readMeta(meta);
+		assertEquals("\"page-0\"", revalidated.etag);
+		assertTrue(revalidated.fetchedAt >= start);
+	}
+
+	@Test
+	void usesAFreshPageWithoutARequest() throws IOException {
+		pages = List.of(List.<String[]>of(new String[] { "hp", "HP", "HPO" }),
+				List.<String[]>of(new String[] { "go", "GO", "GO" }));
+		new OLSOntologiesFetcher(olsUrl).setCache(cacheDir, Duration.ofDays(1)).fetch();
+		assertEquals(2, requests.get());
+
+		Map<String, Datasources.Datasource> datasources = new OLSOntologiesFetcher(olsUrl)
+				.setCache(cacheDir, Duration.ofDays(1)).fetch();
+		assertEquals(2, requests.get());
+		assertEquals(2, datasources.size());
+		assertNull(ifNoneMatch.get(0));
+	}
+
+	@Test
+	void fallsBackToTheCacheOnServerErrors() throws IOException {
+		pages = List.of(List.<String[]>of(new String[] { "hp", "HP", "HPO" }),
+				List.<String[]>of(new String[] { "go", "GO", "GO" }));
+		new OLSOntologiesFetcher(olsUrl).setCache(cacheDir, Duration.ZERO).fetch();
+
+		status = 503;
+		Map<String, Datasources.Datasource> datasources = new OLSOntologiesFetcher(olsUrl)
+				.setCache(cacheDir, Duration.ZERO).fetch();
+		assertEquals(4, requests.get());
+		assertEquals(2, datasources.size());
+		assertEquals("GO", datasources.get("GO").getTitle());
+
+		// without a cached page there is nothing to fall back to
+		assertThrows(IOException.class, () -> new OLSOntologiesFetcher(olsUrl).fetch());
+	}
+
+	@Test
+	void offlineNeedsEveryPageInTheCache() throws IOException {
+		pages = List.of(List.<String[]>of(new String[] { "hp", "HP", "HPO" }),
+				List.<String[]>of(new String[] { "go", "GO", "GO" }),
+				List.<String[]>of(new String[] { "mondo", "MONDO", "Mondo" }));
+		new OLSOntologiesFetcher(olsUrl).setCache(cacheDir, Duration.ofDays(1)).fetch();
+		assertEquals(3, requests.get());
+
+		Map<String, Datasources.Datasource> datasources = new OLSOntologiesFetcher(olsUrl)
+				.setCache(cacheDir, Duration.ZERO).setOffline(true).fetch();
+		assertEquals(3, datasources.size());
+		assertEquals(3, requests.get());
+
+		Files.delete(cached("ontologies-2.json"));
+		IOException e = assertThrows(IOException.class, () -> new OLSOntologiesFetcher(olsUrl)
+				.setCache(cacheDir, Duration.ZERO).setOffline(true).fetch());
+		assertTrue(e.getMessage().contains("page=2"), e.getMessage());
+		assertEquals(3, requests.get());
+		assertThrows(IOException.class, () -> new OLSOntologiesFetcher(olsUrl).setOffline(true).fetch());
+	}
+
+	private Path cached(String name) throws IOException {
+		try (Stream<Path> files = Files.walk(cacheDir)) {
+			return files.filter(file -> file.getFileName().toString().equals(name)).findFirst().orElseThrow();
+		}
+	}
+
+	private static OLSOntologiesFetcher.CachedPage readMeta(Path meta) throws IOException {
+		try (Reader reader = Files.newBufferedReader(meta)) {
+			return new Gson().fromJson(reader, OLSOntologiesFetcher.CachedPage.class);
+		}
+	}
+
+	private static void writeMeta(Path meta, OLSOntologiesFetcher.CachedPage cachedPage) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(meta)) {
+			new Gson().toJson(cachedPage, writer);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package uk.ac.ebi;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+// SSSOMReader against the CSVFormat.TDF parsing with '#' comments it replaced.
+class SSSOMReaderTest {
+
+	private static final String HEADER = "# curie_map:\n#   HP: http://purl.obolibrary.org/obo/HP_\n"
+			+ "# local_name: hp.sssom.tsv\n";
+	private static final String COLUMNS = "subject_id\tsubject_label\tpredicate_id\tobject_id\tobject_label\n";
+
+	@Test
+	void readsQuotedFieldsWithTabsNewlinesAndQuotes() throws IOException {
+		String tsv = HEADER + COLUMNS
+				+ "HP:1\t\"a\tlabel\"\tskos:exactMatch\tMONDO:1\t\"two\nlines\"\n"
+				+ "HP:2\t\"say \"\"hi\"\"\"\tskos:exactMatch\tMONDO:2\t\"\"\"\"\n";
+		List<String[]> rows = readAll(tsv, SSSOMProjection.all());
+		assertEquals(2, rows.size());
+		assertEquals("a\tlabel", rows.get(0)[1]);
+		assertEquals("two\nlines", rows.get(0)[4]);
+		assertEquals("say \"hi\"", rows.get(1)[1]);
+		assertEquals("\"", rows.get(1)[4]);
+		assertSameAsCommonsCsv(tsv);
+	}
+
+	@Test
+	void readsRowsSplitAcrossBufferRefills() throws IOException {
+		StringBuilder tsv = new StringBuilder(HEADER).append(COLUMNS);
+		for (int i = 0; i < 50; i++)
+			tsv.append("HP:").append(i).append("\t\"label\t").append(i).append("\nmore\"\tskos:exactMatch\tMONDO:")
+					.append(i).append("\tl").append(i).append("\r\n");
+		// a few bytes per read, so rows, quoted fields and CRLFs are cut at every offset
+		for (int chunk : new int[] { 1, 3, 7, 64 }) {
+			List<String[]> rows = readAll(trickle(tsv.toString(), chunk), SSSOMProjection.all());
+			assertEquals(50, rows.size());
+			assertEquals("label\t49\nmore", rows.get(49)[1]);
+			assertEquals("l49", rows.get(49)[4]);
+		}
+		assertSameAsCommonsCsv(tsv.toString());
+	}
+
+	@Test
+	void readsRowsSplitAcrossTheFullBuffer() throws IOException {
+		// rows of varying length, so that some row straddles the end of the first 1 MB read
+		StringBuilder tsv = new StringBuilder(HEADER).append(COLUMNS);
+		int count = 0;
+		while (tsv.length() < (3 << 20)) {
+			tsv.append("HP:").append(count).append('\t').append("x".repeat(count % 97)).append("\tskos:exactMatch\tMONDO:")
+					.append(count).append("\t\"q").append(count).append("\"\n");
+			count++;
+		}
+		List<String[]> rows = readAll(tsv.toString(), SSSOMProjection.all());
+		assertEquals(count, rows.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals("HP:" + i, rows.get(i)[0]);
+			assertEquals("q" + i, rows.get(i)[4]);
+		}
+	}
+
+	@Test
+	void readsCrlfLineEndings() throws IOException {
+		String tsv = (HEADER + COLUMNS + "HP:1\tone\tskos:exactMatch\tMONDO:1\tuno\n"
+				+ "HP:2\t\"two\"\tskos:exactMatch\tMONDO:2\t\n").replace("\n", "\r\n");
+		try (SSSOMReader reader = new SSSOMReader(channel(tsv), SSSOMProjection.all())) {
+			assertEquals("hp.sssom.tsv", reader.getYamlHeader().get("local_name"));
+			assertEquals("object_label", reader.getColumns()[4]);
+		}
+		List<String[]> rows = readAll(tsv, SSSOMProjection.all());
+		assertEquals(2, rows.size());
+		assertEquals("uno", rows.get(0)[4]);
+		assertEquals("two", rows.get(1)[1]);
+		assertEquals("", rows.get(1)[4]);
+		assertSameAsCommonsCsv(tsv);
+	}
+
+	@Test
+	void readsALastRowWithoutNewline() throws IOException {
+		String tsv = HEADER + COLUMNS + "HP:1\tone\tskos:exactMatch\tMONDO:1\tuno\nHP:2\ttwo\tskos:exactMatch\tMONDO:2\tdos";
+		List<String[]> rows = readAll(tsv, SSSOMProjection.all());
+		assertEquals(2, rows.size());
+		assertEquals("dos", rows.get(1)[4]);
+		assertEquals("\"quoted\"", readAll(HEADER + COLUMNS + "HP:1\t\"\"\"quoted\"\"\"", SSSOMProjection.all())
+				.get(0)[1]);
+		assertSameAsCommonsCsv(tsv);
+	}
+
+	@Test
+	void readsAHeaderWithoutRows() throws IOException {
+		try (SSSOMReader reader = new SSSOMReader(channel(HEADER + COLUMNS), SSSOMProjection.all())) {
+			assertEquals("hp.sssom.tsv", reader.getYamlHeader().get("local_name"));
+			assertEquals("http://purl.obolibrary.org/obo/HP_",
+					((Map<?, ?>)reader.getYamlHeader().get("curie_map")).get("HP"));
+			assertArrayEquals(COLUMNS.trim().split("\t"), reader.getColumns());
+			assertFalse(reader.next());
+		}
+		try (SSSOMReader reader = new SSSOMReader(channel(HEADER), SSSOMProjection.all())) {
+			assertEquals("hp.sssom.tsv", reader.getYamlHeader().get("local_name"));
+			assertEquals(0, reader.getColumns().length);
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	void skipsColumnsOutsideTheProjection() throws IOException {
+		String tsv = HEADER + COLUMNS
+				+ "HP:1\t\"skipped\tquoted\nlabel\"\tskos:exactMatch\tMONDO:1\tuno\n"
+				+ "HP:2\ttwo\t\"skipped \"\"too\"\"\"\tMONDO:2\tdos\n";
+		SSSOMProjection projection = new SSSOMProjection().addColumns("subject_id", "object_id", "object_label");
+		try (SSSOMReader reader = new SSSOMReader(trickle(tsv, 5), projection)) {
+			int subjectLabel = reader.getColumnIndex("subject_label");
+			int predicate = reader.getColumnIndex("predicate_id");
+			assertTrue(reader.next());
+			assertEquals("HP:1", reader.get(0));
+			assertNull(reader.get(subjectLabel));
+			assertEquals("MONDO:1", reader.get(3));
+			assertEquals("uno", reader.get(4));
+			assertTrue(reader.next());
+			assertNull(reader.get(predicate));
+			assertEquals("MONDO:2", reader.get(3));
+			assertEquals("dos", reader.get(4));
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	void filtersRowsByPrefixAndConfidence() throws IOException {
+		String tsv = HEADER + "subject_id\tobject_id\tconfidence\n"
+				+ "HP:1\tMONDO:1\t0.9\n"
+				+ "GO:2\tmondo:2\t0.5\n"
+				+ "GO:3\tCHEBI:3\t0.99\n"
+				+ "hp:4\tCHEBI:4\t\n";
+		SSSOMProjection projection = SSSOMProjection.forOutputs()
+				.withIncludedPrefixes(List.of("HP", "MONDO"))
+				.withMinConfidence(0.8);
+		List<String[]> rows = readAll(tsv, projection);
+		assertEquals(List.of("HP:1", "hp:4"), Arrays.asList(rows.get(0)[0], rows.get(1)[0]));
+	}
+
+	private static List<String[]> readAll(String tsv, SSSOMProjection projection) throws IOException {
+		return readAll(channel(tsv), projection);
+	}
+
+	private static List<String[]> readAll(ReadableByteChannel channel, SSSOMProjection projection)
+			throws IOException {
+		List<String[]> rows = new ArrayList<>();
+		try (SSSOMReader reader = new SSSOMReader(channel, projection)) {
+			while (reader.next()) {
+				String[] row = new String[reader.getColumns().length];
+				for (int i = 0; i < row.length; i++)
+					row[i] = reader.get(i);
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static void assertSameAsCommonsCsv(String tsv) throws IOException {
+		List<String[]> expected = new ArrayList<>();
+		try (CSVParser parser = new CSVParser(new StringReader(tsv),
+				CSVFormat.TDF.builder().setCommentMarker('#').setHeader().build())) {
+			for (CSVRecord record : parser)
+				expected.add(record.values());
+		}
+		List<String[]> rows = readAll(tsv, SSSOMProjection.all());
+		assertEquals(expected.size(), rows.size());
+		for (int i = 0; i < rows.size(); i++)
+			assertArrayEquals(expected.get(i), rows.get(i), "row " + i);
+	}
+
+	private static ReadableByteChannel channel(String text) {
+		return Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	// A channel returning at most chunk bytes per read.
+	private static ReadableByteChannel trickle(String text, int chunk) {
+		ByteBuffer data = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		return new ReadableByteChannel() {
+			private boolean open = true;
+
+			@Override
+			public int read(ByteBuffer dst) {
+				if (!data.hasRemaining())
+					return -1;
+				int length = Math.min(chunk, Math.min(dst.remaining(), data.remaining()));
+				ByteBuffer slice = data.slice();
+				slice.limit(length);
+				dst.put(slice);
+				data.position(data.position() + length);
+				return length;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return open;
+			}
+
+			@Override
+			public void close() {
+				open = false;
+			}
+		};
+	}
+}
@@ -0,0 +1,130 @@
+package uk.ac.ebi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// SortedNodeResolver spilling runs and merging more of them than it keeps open, against the in-memory resolution.
+class SortedNodeResolverTest {
+
+	private static final String[] LABELS = { "", "", "alpha", "beta", "gamma", "delta", "Alpha" };
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void firstLabelIsTheSameWhenSpilling() throws IOException {
+		assertSameAsInMemory(ConversionOptions.LabelChoice.FIRST);
+	}
+
+	@Test
+	void mostFrequentLabelIsTheSameWhenSpilling() throws IOException {
+		assertSameAsInMemory(ConversionOptions.LabelChoice.MOST_FREQUENT);
+	}
+
+	@Test
+	void tiesGoToTheLabelSeenFirst() throws IOException {
+		// each label goes to a run of its own, so the counts and first positions are only known after merging
+		String[][] candidates = {
+				{ "B:1", "" }, { "B:1", "later" }, { "B:1", "earlier" },
+				{ "A:1", "zeta" }, { "A:1", "alpha" }, { "A:1", "alpha" }, { "A:1", "zeta" },
+				{ "C:1", "" }, { "C:1", null },
+				{ "D:1", "rare" }, { "D:1", "common" }, { "D:1", "common" } };
+
+		Map<String, String> first = resolve(candidates, 1, ConversionOptions.LabelChoice.FIRST);
+		assertEquals(Map.of("A:1", "zeta", "B:1", "later", "C:1", "C:1", "D:1", "rare"), first);
+		assertEquals(List.of("A:1", "B:1", "C:1", "D:1"), new ArrayList<>(first.keySet()));
+
+		Map<String, String> mostFrequent = resolve(candidates, 1, ConversionOptions.LabelChoice.MOST_FREQUENT);
+		// zeta and alpha are seen twice each, zeta first
+		assertEquals(Map.of("A:1", "zeta", "B:1", "later", "C:1", "C:1", "D:1", "common"), mostFrequent);
+	}
+
+	private void assertSameAsInMemory(ConversionOptions.LabelChoice labelChoice) throws IOException {
+		String[][] candidates = randomCandidates(new Random(42), 6000, 1500);
+		Map<String, String> expected = reference(candidates, labelChoice);
+
+		Map<String, String> inMemory = resolve(candidates, Long.MAX_VALUE, labelChoice);
+		assertEquals(expected, inMemory);
+		assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(inMemory.keySet()));
+
+		// every candidate spills a run of its own, so the runs are merged several times over
+		try (SortedNodeResolver resolver = new SortedNodeResolver(tempDir, 1, labelChoice)) {
+			for (String[] candidate : candidates)
+				resolver.add(candidate[0], candidate[1]);
+			assertTrue(runFiles() > 64 * 64, runFiles() + " runs");
+			Map<String, String> spilled = new LinkedHashMap<>();
+			resolver.resolve(spilled::put);
+			assertEquals(expected, spilled);
+			assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(spilled.keySet()));
+			assertEquals(expected.size(), resolver.getNodes());
+			assertEquals(expected.entrySet().stream().filter(node -> node.getKey().equals(node.getValue())).count(),
+					resolver.getNodesWithoutLabel());
+		}
+		assertEquals(0, runFiles());
+
+		// runs of a few hundred candidates each, fewer than one merge pass takes
+		assertEquals(expected, resolve(candidates, 20_000, labelChoice));
+	}
+
+	private Map<String, String> resolve(String[][] candidates, long memoryBudget,
+										ConversionOptions.LabelChoice labelChoice) throws IOException {
+		Map<String, String> labels = new LinkedHashMap<>();
+		try (SortedNodeResolver resolver = new SortedNodeResolver(tempDir, memoryBudget, labelChoice)) {
+			for (String[] candidate : candidates)
+				resolver.add(candidate[0], candidate[1]);
+			resolver.resolve(labels::put);
+		}
+		return labels;
+	}
+
+	// The label of each CURIE, from every candidate held in memory in the order they were added.
+	private static Map<String, String> reference(String[][] candidates, ConversionOptions.LabelChoice labelChoice) {
+		Map<String, Map<String, Integer>> counts = new TreeMap<>();
+		for (String[] candidate : candidates) {
+			Map<String, Integer> labels = counts.computeIfAbsent(candidate[0], curie -> new LinkedHashMap<>());
+			if (candidate[1] != null && !candidate[1].isEmpty())
+				labels.merge(candidate[1], 1, Integer::sum);
+		}
+		Map<String, String> resolved = new LinkedHashMap<>();
+		counts.forEach((curie, labels) -> {
+			String best = null;
+			// the labels are in the order they were first seen, so only a higher count replaces an earlier one
+			for (Map.Entry<String, Integer> label : labels.entrySet())
+				if (best == null || labelChoice == ConversionOptions.LabelChoice.MOST_FREQUENT
+						&& label.getValue() > labels.get(best))
+					best = label.getKey();
+			resolved.put(curie, best != null ? best : curie);
+		});
+		return resolved;
+	}
+
+	private static String[][] randomCandidates(Random random, int count, int curies) {
+		String[][] candidates = new String[count][];
+		for (int i = 0; i < count; i++) {
+			String curie = (random.nextBoolean() ? "HP:" : "GO:") + random.nextInt(curies);
+			String label = random.nextInt(20) == 0 ? null : LABELS[random.nextInt(LABELS.length)];
+			candidates[i] = new String[] { curie, label };
+		}
+		return candidates;
+	}
+
+	private long runFiles() throws IOException {
+		try (Stream<Path> files = Files.walk(tempDir)) {
+			return files.filter(Files::isRegularFile).count();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package uk.ac.ebi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+// WriterStage printing batches on its thread, and ending it after a failure.
+class WriterStageTest {
+
+	@Test
+	void printsEveryRowInOrder() throws IOException {
+		ClosingWriter out = new ClosingWriter();
+		WriterStage stage = new WriterStage("rows", Oxo1SSSOM2Neo.CSV_FORMAT.print(out),
+				(printer, context, first, second, third, fourth) -> printer.printRecord(context, first, second, third,
+						fourth));
+		// full batches, and batches cut short where the context changes
+		List<List<String>> rows = new ArrayList<>();
+		for (int i = 0; i < 3 * WriterStage.BATCH_SIZE + 5; i++) {
+			List<String> row = List.of(i / 5000 % 2 == 0 ? "a" : "b", "r" + i, "s" + i, "t" + i, "u" + i);
+			stage.write(row.get(0), row.get(1), row.get(2), row.get(3), row.get(4));
+			rows.add(row);
+		}
+		stage.close();
+		assertTrue(out.closed);
+
+		List<List<String>> printed = new ArrayList<>();
+		try (CSVParser parser = CSVParser.parse(out.toString(), Oxo1SSSOM2Neo.CSV_FORMAT)) {
+			for (CSVRecord record : parser)
+				printed.add(record.toList());
+		}
+		assertEquals(rows, printed);
+	}
+
+	@Test
+	void closesThePrinterAfterAFailure() throws IOException {
+		ClosingWriter out = new ClosingWriter();
+		WriterStage stage = new WriterStage("rows", Oxo1SSSOM2Neo.CSV_FORMAT.print(out),
+				(printer, context, first, second, third, fourth) -> {
+					if (first.equals("10"))
+						throw new IOException("disk full");
+					printer.printRecord(first);
+				});
+		assertThrows(IOException.class, () -> {
+			// the failure shows up on a later batch, or at the latest when closing
+			for (int i = 0; i < 20 * WriterStage.BATCH_SIZE; i++)
+				stage.write(null, Integer.toString(i), null, null, null);
+		});
+		IOException e = assertThrows(IOException.class, stage::close);
+		assertEquals("disk full", e.getCause().getMessage());
+		assertTrue(out.closed);
+	}
+
+	private static final class ClosingWriter extends StringWriter {
+		volatile boolean closed;
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+}